@@ -0,0 +1,58 @@
+package hu.rycus86.bioid.benchmark;
+
+import hu.rycus86.bioid.Binarize;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the binarization of the original images.
+ * 
+ * @author viktor.adam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinarizeBenchmark {
+	
+	/** The name of the input image (see {@link Inputs#load(String)}). */
+	@Param({ "fingerprint.png", "fingerprint2.jpg", "synthetic-256", "synthetic-1024", "synthetic-2048" })
+	public String image;
+	
+	/** The original image. */
+	private BufferedImage original;
+	
+	/** Loads the input image. */
+	@Setup
+	public void setup() throws Exception {
+		original = Inputs.load(image);
+	}
+	
+	/** Binarizes with the global threshold. */
+	@Benchmark
+	public BufferedImage binarize() {
+		return Binarize.execute(original, 0x7F);
+	}
+	
+	/** Binarizes with the local mean of the surrounding window. */
+	@Benchmark
+	public BufferedImage binarizeAdaptive() {
+		return Binarize.executeAdaptive(original, 12, 10);
+	}
+	
+}
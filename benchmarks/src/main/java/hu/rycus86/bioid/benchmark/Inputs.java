@@ -0,0 +1,81 @@
+package hu.rycus86.bioid.benchmark;
+
+import hu.rycus86.bioid.util.Log;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Helper class providing the input images of the benchmarks.
+ * 
+ * The names starting with <code>synthetic-</code> followed by a size produce square images
+ * of concentric, slightly wavy ridges, any other name is read from the <code>sample</code> directory
+ * (looked up in the working directory and its parent, or set with the <code>sample.dir</code> system property).
+ * 
+ * @author viktor.adam
+ */
+public class Inputs {
+	
+	/** The prefix of synthetic image names. */
+	private static final String SYNTHETIC = "synthetic-";
+	
+	/** The distance between the centers of two ridges on synthetic images (in pixels). */
+	private static final double RIDGE_PERIOD = 9.0;
+	
+	/** Returns the (RGB) image with the given name. */
+	public static BufferedImage load(String name) throws IOException {
+		if(name.startsWith(SYNTHETIC)) {
+			return synthetic(Integer.parseInt(name.substring(SYNTHETIC.length())));
+		}
+		
+		File file = new File(sampleDirectory(), name);
+		BufferedImage image = ImageIO.read(file);
+		if(image == null) {
+			throw new IOException("Can't read sample image: " + file.getAbsolutePath());
+		}
+		return image;
+	}
+	
+	/** Generates a fingerprint-like image of the given size. */
+	public static BufferedImage synthetic(int size) {
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+		
+		double cx = size * 0.45;
+		double cy = size * 0.55;
+		
+		for(int y = 0; y < size; y++) {
+			for(int x = 0; x < size; x++) {
+				double dx = x - cx;
+				double dy = y - cy;
+				
+				double angle  = Math.atan2(dy, dx);
+				double radius = Math.sqrt(dx * dx + dy * dy) + 3.0 * Math.sin(angle * 5.0);
+				
+				int value = (int) Math.round(127.5 + 110.0 * Math.cos(2.0 * Math.PI * radius / RIDGE_PERIOD));
+				image.setRGB(x, y, (value << 16) | (value << 8) | value);
+			}
+		}
+		
+		return image;
+	}
+	
+	/** Stops the analyzer classes from logging on the standard output during the measurements. */
+	public static void silenceLog() {
+		Log.setLevel(Log.Level.WARN);
+	}
+	
+	/** Returns the directory of the sample images. */
+	private static File sampleDirectory() {
+		String property = System.getProperty("sample.dir");
+		if(property != null) return new File(property);
+		
+		File sample = new File("sample");
+		if(sample.isDirectory()) return sample;
+		
+		return new File("../sample");
+	}
+	
+}
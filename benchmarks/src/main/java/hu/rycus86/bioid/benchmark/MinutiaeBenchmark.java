@@ -0,0 +1,178 @@
+package hu.rycus86.bioid.benchmark;
+
+import hu.rycus86.bioid.Binarize;
+import hu.rycus86.bioid.FindBranches;
+import hu.rycus86.bioid.FindEndings;
+import hu.rycus86.bioid.FindMinutiae;
+import hu.rycus86.bioid.Thinning;
+import hu.rycus86.bioid.util.BinaryImage;
+import hu.rycus86.bioid.util.ByteFlag;
+import hu.rycus86.bioid.util.Minutiae;
+import hu.rycus86.bioid.util.Point;
+import hu.rycus86.bioid.util.SkeletonGraph;
+import hu.rycus86.bioid.util.Util;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of finding the endings and branches on thinned images and of tracing the ridges from them.
+ * 
+ * @author viktor.adam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MinutiaeBenchmark {
+	
+	/** The maximum number of steps taken when tracing a ridge (as the branch detection does). */
+	private static final int TRACE_LIMIT = 10;
+	
+	/** The name of the input image (see {@link Inputs#load(String)}). */
+	@Param({ "fingerprint.png", "fingerprint2.jpg", "synthetic-256", "synthetic-1024", "synthetic-2048" })
+	public String image;
+	
+	/** The thinned image. */
+	private BufferedImage thinned;
+	/** The bit-packed thinned image. */
+	private BinaryImage bitmap;
+	
+	/** The image receiving the circles drawn around the found minutiae. */
+	private BufferedImage canvas;
+	/** The graphics of the canvas. */
+	private Graphics2D graphics;
+	
+	/** The coordinates of the endings and their only neighbours to trace the ridges from. */
+	private int[] traces;
+	/** The windows around the endings used as the initial masks of the traces. */
+	private int[][] windows;
+	
+	/** Binarizes and thins the input image and collects the ridges to trace. */
+	@Setup
+	public void setup() throws Exception {
+		Inputs.silenceLog();
+		
+		bitmap = BinaryImage.fromImage(Binarize.execute(Inputs.load(image), 0x7F));
+		
+		ByteFlag changed = new ByteFlag(false);
+		do {
+			Thinning.execute(bitmap, changed);
+		} while(changed.get());
+		
+		thinned = bitmap.toImage();
+		
+		canvas 	 = new BufferedImage(thinned.getWidth(), thinned.getHeight(), BufferedImage.TYPE_INT_RGB);
+		graphics = canvas.createGraphics();
+		
+		Minutiae minutiae = FindMinutiae.execute(bitmap);
+		List<Point> endings = minutiae.getEndings();
+		
+		Raster raster = thinned.getRaster();
+		
+		traces 	= new int[endings.size() * 4];
+		windows = new int[endings.size()][];
+		
+		int idx = 0;
+		for(Point pt : endings) {
+			int[] window = raster.getPixels(pt.x - 1, pt.y - 1, 3, 3, (int[]) null);
+			
+			for(int neighbour = 0; neighbour < 9; neighbour++) {
+				if(neighbour != 4 && window[neighbour] == 0x00) {
+					traces[idx * 4] 	= pt.x;
+					traces[idx * 4 + 1] = pt.y;
+					traces[idx * 4 + 2] = pt.x + (neighbour % 3) - 1;
+					traces[idx * 4 + 3] = pt.y + (neighbour / 3) - 1;
+					break;
+				}
+			}
+			
+			windows[idx++] = window;
+		}
+	}
+	
+	/** Releases the graphics of the canvas. */
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+	
+	/** Finds the endings on the thinned image. */
+	@Benchmark
+	public Minutiae findEndings() {
+		return FindEndings.execute(thinned, graphics);
+	}
+	
+	/** Finds the branches on the thinned image. */
+	@Benchmark
+	public Minutiae findBranches() {
+		return FindBranches.execute(thinned, graphics);
+	}
+	
+	/** Finds the endings on the bit-packed thinned image. */
+	@Benchmark
+	public Minutiae findEndingsBitmap() {
+		return FindEndings.execute(bitmap, graphics);
+	}
+	
+	/** Finds the branches on the bit-packed thinned image. */
+	@Benchmark
+	public Minutiae findBranchesBitmap() {
+		return FindBranches.execute(bitmap, graphics);
+	}
+	
+	/** Finds the endings and branches in a single scan of the bit-packed thinned image. */
+	@Benchmark
+	public Minutiae findMinutiae() {
+		return FindMinutiae.execute(bitmap);
+	}
+	
+	/** Builds the graph of the bit-packed thinned image and collects the endings and branches from it. */
+	@Benchmark
+	public Minutiae findMinutiaeGraph() {
+		return FindMinutiae.execute(SkeletonGraph.build(bitmap));
+	}
+	
+	/** Traces the ridges starting at every ending. */
+	@Benchmark
+	public int branchLength() {
+		Raster raster = thinned.getRaster();
+		
+		int total = 0;
+		for(int idx = 0; idx < windows.length; idx++) {
+			total += Util.branchLength(traces[idx * 4], traces[idx * 4 + 1], traces[idx * 4 + 2], traces[idx * 4 + 3],
+					raster, TRACE_LIMIT, windows[idx]);
+		}
+		return total;
+	}
+	
+	/** Traces the ridges starting at every ending on the bit-packed image. */
+	@Benchmark
+	public int branchLengthBitmap() {
+		int total = 0;
+		for(int idx = 0; idx < windows.length; idx++) {
+			total += Util.branchLength(traces[idx * 4], traces[idx * 4 + 1], traces[idx * 4 + 2], traces[idx * 4 + 3],
+					bitmap, TRACE_LIMIT, windows[idx]);
+		}
+		return total;
+	}
+	
+}
@@ -0,0 +1,75 @@
+package hu.rycus86.bioid.benchmark;
+
+import hu.rycus86.bioid.Binarize;
+import hu.rycus86.bioid.FindMinutiae;
+import hu.rycus86.bioid.Thinning;
+import hu.rycus86.bioid.util.BinaryImage;
+import hu.rycus86.bioid.util.ByteFlag;
+import hu.rycus86.bioid.util.Minutiae;
+import hu.rycus86.bioid.util.Serializer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of writing the results of an analyzation (into the <code>output</code> directory of the working directory).
+ * 
+ * @author viktor.adam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+	
+	/** The base name of the output files. */
+	private static final String OUTPUT_NAME = "serializer-benchmark";
+	
+	/** The name of the input image (see {@link Inputs#load(String)}). */
+	@Param({ "fingerprint.png", "fingerprint2.jpg", "synthetic-1024" })
+	public String image;
+	
+	/** The minutiae found on the input image. */
+	private Minutiae minutiae;
+	
+	/** Finds the minutiae on the input image. */
+	@Setup
+	public void setup() throws Exception {
+		Inputs.silenceLog();
+		
+		BinaryImage bitmap = BinaryImage.fromImage(Binarize.execute(Inputs.load(image), 0x7F));
+		
+		ByteFlag changed = new ByteFlag(false);
+		do {
+			Thinning.execute(bitmap, changed);
+		} while(changed.get());
+		
+		minutiae = FindMinutiae.execute(bitmap);
+	}
+	
+	/** Writes the results as text. */
+	@Benchmark
+	public void write() {
+		Serializer.write(image, OUTPUT_NAME, minutiae);
+	}
+	
+	/** Writes the results as a binary template. */
+	@Benchmark
+	public void writeTemplate() {
+		Serializer.writeTemplate(image, OUTPUT_NAME, minutiae);
+	}
+	
+}
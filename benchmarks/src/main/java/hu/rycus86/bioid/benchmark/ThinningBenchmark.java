@@ -0,0 +1,70 @@
+package hu.rycus86.bioid.benchmark;
+
+import hu.rycus86.bioid.Binarize;
+import hu.rycus86.bioid.Thinning;
+import hu.rycus86.bioid.util.BinaryImage;
+import hu.rycus86.bioid.util.ByteFlag;
+import hu.rycus86.bioid.util.Util;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of a single execution of the Thinning algorithm.
+ * 
+ * @author viktor.adam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThinningBenchmark {
+	
+	/** The name of the input image (see {@link Inputs#load(String)}). */
+	@Param({ "fingerprint.png", "fingerprint2.jpg", "synthetic-256", "synthetic-1024", "synthetic-2048" })
+	public String image;
+	
+	/** The binarized input image. */
+	private BufferedImage binarized;
+	/** The bit-packed binarized input image. */
+	private BinaryImage bitmap;
+	
+	/** Binarizes the input image. */
+	@Setup
+	public void setup() throws Exception {
+		Inputs.silenceLog();
+		
+		binarized = Binarize.execute(Inputs.load(image), 0x7F);
+		bitmap 	  = BinaryImage.fromImage(binarized);
+	}
+	
+	/** Runs a single execution of the reference implementation on a copy of the binarized image. */
+	@Benchmark
+	public BufferedImage execute() {
+		// the sub-passes write back into their input
+		return Thinning.execute(Util.copyImage(binarized), new ByteFlag(false));
+	}
+	
+	/** Runs a single execution of the bit-packed implementation on a copy of the binarized image. */
+	@Benchmark
+	public BinaryImage executeBitmap() {
+		BinaryImage image = new BinaryImage(bitmap.getWidth(), bitmap.getHeight());
+		image.copyFrom(bitmap);
+		return Thinning.execute(image, new ByteFlag(false));
+	}
+	
+}
@@ -0,0 +1,91 @@
+package hu.rycus86.bioid.benchmark;
+
+import hu.rycus86.bioid.Binarize;
+import hu.rycus86.bioid.Engine;
+import hu.rycus86.bioid.IncrementalThinning;
+import hu.rycus86.bioid.Thinning;
+import hu.rycus86.bioid.ThinningContext;
+import hu.rycus86.bioid.util.ByteFlag;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the full Thinning loop running the algorithm until nothing changes, for each engine.
+ * 
+ * @author viktor.adam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThinningLoopBenchmark {
+	
+	/** The name of the input image (see {@link Inputs#load(String)}). */
+	@Param({ "fingerprint.png", "fingerprint2.jpg", "synthetic-256", "synthetic-1024", "synthetic-2048" })
+	public String image;
+	
+	/** The engine used by the full loop. */
+	@Param({ "RASTER", "BITMAP", "INCREMENTAL", "PARALLEL", "VECTOR" })
+	public Engine engine;
+	
+	/** The binarized input image. */
+	private BufferedImage binarized;
+	
+	/** The reusable planes of the loop. */
+	private final ThinningContext context = new ThinningContext();
+	
+	/** Binarizes the input image. */
+	@Setup
+	public void setup() throws Exception {
+		Inputs.silenceLog();
+		
+		binarized = Binarize.execute(Inputs.load(image), 0x7F);
+	}
+	
+	/** Runs the Thinning algorithm as many times as needed (the same way the analyzer does). */
+	@Benchmark
+	public int executeThinning() {
+		int runs = 0;
+		
+		ByteFlag changed = new ByteFlag(false);
+		
+		if(engine == Engine.RASTER) {
+			context.load(binarized);
+		} else {
+			context.loadBitmap(binarized);
+		}
+		
+		IncrementalThinning incremental = engine == Engine.INCREMENTAL ? context.getIncremental() : null;
+		
+		do {
+			if(incremental != null) {
+				incremental.execute(changed);
+			} else if(engine == Engine.PARALLEL) {
+				Thinning.executeParallel(context, changed);
+			} else if(engine == Engine.VECTOR) {
+				Thinning.executeVector(context, changed);
+			} else {
+				Thinning.execute(context, changed);
+			}
+			runs++;
+		} while(changed.get());
+		
+		return runs;
+	}
+	
+}
@@ -0,0 +1,137 @@
+package hu.rycus86.bioid;
+
+import hu.rycus86.bioid.util.BinaryImage;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Applies the Thinning kernels on as many words of a row at a time as the preferred vector holds.
+ * 
+ * Each lane holds a word of 64 pixels, the neighbours of its pixels are built from the words
+ * loaded one word before and after it, then the 9 positions of the mask are matched lane-parallel.
+ * The words that do not fill a whole vector at the end of a row and the rows outside of the processed range
+ * are handled by {@link Thinning#applyWord(BinaryImage, int, int, long, long, int[])},
+ * so the results are the same as the ones of the bitmap engine.
+ * 
+ * Compiled by the <code>vector</code> Maven profile and loaded by {@link VectorKernel}.
+ * 
+ * @author viktor.adam
+ */
+public class VectorThinning extends VectorKernel {
+	
+	/** The shape of the vectors. */
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+	
+	/* @see hu.rycus86.bioid.VectorKernel#apply(BinaryImage, BinaryImage, long[], long[], int[]) */
+	@Override public int apply(BinaryImage source, BinaryImage target, long[] valid, long[] range, int[] kernel) {
+		int height = source.getHeight();
+		int stride = source.getStride();
+		int lanes  = SPECIES.length();
+		
+		long[] src = source.getWords();
+		long[] dst = target.getWords();
+		
+		// each position of the mask matches the pixels flipped (white) or all of them (don't care)
+		long[] flip = new long[9];
+		long[] pass = new long[9];
+		for(int idx = 0; idx < 9; idx++) {
+			flip[idx] = kernel[idx] == 0xFF ? -1L : 0L;
+			pass[idx] = kernel[idx] == 0xAA ? -1L : 0L;
+		}
+		
+		int removedCount = 0;
+		LongVector removedBits = LongVector.zero(SPECIES);
+		
+		for(int y = 0; y < height; y++) {
+			boolean inner = y >= 1 && y < height - 2;
+			int offset = y * stride;
+			int index  = 0;
+			
+			if(inner) {
+				// the first word of the second row has no word before it in the row above
+				if(y == 1) {
+					removedCount += applyWord(source, src, dst, y, index, valid[index], range[index], kernel);
+					index++;
+				}
+				
+				for(; index + lanes <= stride; index += lanes) {
+					int at = offset + index;
+					
+					LongVector match = matchRow(src, at - stride, 0, flip, pass)
+							.and(matchRow(src, at, 3, flip, pass))
+							.and(matchRow(src, at + stride, 6, flip, pass));
+					
+					LongVector pixels  = LongVector.fromArray(SPECIES, src, at);
+					LongVector columns = LongVector.fromArray(SPECIES, range, index);
+					LongVector removed = match.and(pixels).and(columns);
+					
+					// pixels outside of the processed range are set to dark just like on the bitmap path
+					LongVector result = pixels.and(columns).and(removed.not())
+							.or(LongVector.fromArray(SPECIES, valid, index).and(columns.not()));
+					
+					result.intoArray(dst, at);
+					removedBits = removedBits.add(bitCount(pixels.and(result.not())));
+				}
+			}
+			
+			for(; index < stride; index++) {
+				removedCount += applyWord(source, src, dst, y, index, valid[index], inner ? range[index] : 0L, kernel);
+			}
+		}
+		
+		return removedCount + (int) removedBits.reduceLanes(VectorOperators.ADD);
+	}
+	
+	/**
+	 * Matches a row of the mask for the words of a vector.
+	 * The carries between the rows of the image only reach the first and the last pixel of the rows,
+	 * which are outside of the processed range.
+	 * @param words The pixel data
+	 * @param at The offset of the first word of the vector in the row of the neighbours
+	 * @param first The index of the first position of the row in the mask
+	 * @param flip The flip values of the positions of the mask
+	 * @param pass The pass values of the positions of the mask
+	 * @return The pixels whose neighbours in the row match the mask
+	 */
+	private static LongVector matchRow(long[] words, int at, int first, long[] flip, long[] pass) {
+		LongVector center = LongVector.fromArray(SPECIES, words, at);
+		LongVector before = LongVector.fromArray(SPECIES, words, at - 1);
+		LongVector after  = LongVector.fromArray(SPECIES, words, at + 1);
+		
+		// bit b of the shifted words holds the pixel at b - 1 and b + 1
+		LongVector left  = center.lanewise(VectorOperators.LSHL, 1).or(before.lanewise(VectorOperators.LSHR, 63));
+		LongVector right = center.lanewise(VectorOperators.LSHR, 1).or(after.lanewise(VectorOperators.LSHL, 63));
+		
+		return left.lanewise(VectorOperators.XOR, flip[first]).or(pass[first])
+				.and(center.lanewise(VectorOperators.XOR, flip[first + 1]).or(pass[first + 1]))
+				.and(right.lanewise(VectorOperators.XOR, flip[first + 2]).or(pass[first + 2]));
+	}
+	
+	/**
+	 * Returns the number of set bits of each lane
+	 * (the lane-wise bit count operator is not available in the incubator module of Java 17).
+	 */
+	private static LongVector bitCount(LongVector words) {
+		LongVector bits = words.sub(words.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+		bits = bits.and(0x3333333333333333L).add(bits.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+		bits = bits.add(bits.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+		bits = bits.add(bits.lanewise(VectorOperators.LSHR, 8));
+		bits = bits.add(bits.lanewise(VectorOperators.LSHR, 16));
+		bits = bits.add(bits.lanewise(VectorOperators.LSHR, 32));
+		return bits.and(0x7FL);
+	}
+	
+	/** Applies the kernel on a single word, returns the number of its removed pixels. */
+	private static int applyWord(BinaryImage source, long[] src, long[] dst, int y, int index, long valid, long columns, int[] kernel) {
+		int offset = y * source.getStride() + index;
+		
+		long pixels = src[offset];
+		long result = Thinning.applyWord(source, y, index, valid, columns, kernel);
+		
+		dst[offset] = result;
+		return Long.bitCount(pixels & ~result);
+	}
+	
+}
@@ -1,6 +1,11 @@
 package hu.rycus86.bioid;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
 
 /**
@@ -14,6 +19,14 @@ public class Binarize {
 	public static BufferedImage execute(BufferedImage original, int threshold) {
 		BufferedImage image = new BufferedImage(original.getWidth(), original.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
 		
+		byte[] plane = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		if(maxChannel(original, plane)) {
+			for(int idx = 0; idx < plane.length; idx++) {
+				plane[idx] = (plane[idx] & 0xFF) > threshold ? (byte) 0xFF : 0x00;
+			}
+			return image;
+		}
+		
 		WritableRaster source = original.getRaster();
 		WritableRaster target = image.getRaster();
 		
@@ -33,4 +46,193 @@ public class Binarize {
 		return image;
 	}
 	
+	/**
+	 * Executes the binarization of a maximum channel plane computed once for several thresholds.
+	 * @param plane The maximum channel plane (see {@link #maxChannelPlane(BufferedImage, byte[])})
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param threshold The threshold used for binarization
+	 * @return A gray 1-byte binarized image (the same as {@link #execute(BufferedImage, int)} would return)
+	 */
+	public static BufferedImage execute(byte[] plane, int width, int height, int threshold) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		
+		byte[] target = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		for(int idx = 0; idx < target.length; idx++) {
+			target[idx] = (plane[idx] & 0xFF) > threshold ? (byte) 0xFF : 0x00;
+		}
+		
+		return image;
+	}
+	
+	/**
+	 * Executes an adaptive binarization of the original RGB image:
+	 * each pixel is compared to the mean of the window around it (computed from a summed-area table),
+	 * pixels darker than the mean by at least the given percentage become dark.
+	 * @param original The original image
+	 * @param radius The radius of the window around each pixel
+	 * @param percent How much darker than the local mean a dark pixel has to be (in percents)
+	 * @return A gray 1-byte binarized image
+	 */
+	public static BufferedImage executeAdaptive(BufferedImage original, int radius, int percent) {
+		int width  = original.getWidth();
+		int height = original.getHeight();
+		
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		
+		byte[] plane = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		maxChannelPlane(original, plane);
+		
+		// sums may overflow for large images but the difference for a single window still fits,
+		// so the wrapped-around values give the exact window sums
+		int[] table = new int[(width + 1) * (height + 1)];
+		for(int y = 0; y < height; y++) {
+			int rowSum = 0;
+			for(int x = 0; x < width; x++) {
+				rowSum += plane[y * width + x] & 0xFF;
+				table[(y + 1) * (width + 1) + x + 1] = table[y * (width + 1) + x + 1] + rowSum;
+			}
+		}
+		
+		for(int y = 0; y < height; y++) {
+			int y1 = Math.max(y - radius, 0);
+			int y2 = Math.min(y + radius + 1, height);
+			
+			for(int x = 0; x < width; x++) {
+				int x1 = Math.max(x - radius, 0);
+				int x2 = Math.min(x + radius + 1, width);
+				
+				int count = (x2 - x1) * (y2 - y1);
+				int sum   = table[y2 * (width + 1) + x2] - table[y1 * (width + 1) + x2]
+						  - table[y2 * (width + 1) + x1] + table[y1 * (width + 1) + x1];
+				
+				int idx = y * width + x;
+				long value = (plane[idx] & 0xFF) * (long) count * 100;
+				
+				plane[idx] = value > (long) sum * (100 - percent) ? (byte) 0xFF : 0x00;
+			}
+		}
+		
+		return image;
+	}
+	
+	/**
+	 * Writes the maximum of the color channels of each pixel into the given plane row by row
+	 * using the generic raster API for image types not read directly.
+	 * @param original The original image
+	 * @param plane The target plane (at least width * height long)
+	 */
+	static void maxChannelPlane(BufferedImage original, byte[] plane) {
+		if(maxChannel(original, plane)) return;
+		
+		WritableRaster source = original.getRaster();
+		
+		int width  = original.getWidth();
+		int height = original.getHeight();
+		
+		int[] pixel = new int[3];
+		
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				source.getPixel(x, y, pixel);
+				plane[y * width + x] = (byte) Math.max(pixel[0], Math.max(pixel[1], pixel[2]));
+			}
+		}
+	}
+	
+	/**
+	 * Writes the maximum of the color channels of each pixel into the given plane row by row,
+	 * reading the backing data buffer of the common image types directly.
+	 * @param original The original image
+	 * @param plane The target plane (at least width * height long)
+	 * @return false if the type of the image is not supported (the plane is left untouched)
+	 */
+	static boolean maxChannel(BufferedImage original, byte[] plane) {
+		WritableRaster raster = original.getRaster();
+		
+		if(raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) return false;
+		if(raster.getDataBuffer().getNumBanks() != 1) return false;
+		
+		switch(original.getType()) {
+			case BufferedImage.TYPE_3BYTE_BGR:
+			case BufferedImage.TYPE_BYTE_GRAY:
+				return maxChannelBytes(raster, plane);
+			case BufferedImage.TYPE_INT_RGB:
+			case BufferedImage.TYPE_INT_ARGB:
+				return maxChannelInts(raster, plane);
+			default:
+				return false;
+		}
+	}
+	
+	/** Reads the maximum channel values from interleaved byte samples. */
+	private static boolean maxChannelBytes(WritableRaster raster, byte[] plane) {
+		if(!(raster.getSampleModel() instanceof ComponentSampleModel)) return false;
+		
+		ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+		DataBuffer buffer = raster.getDataBuffer();
+		
+		byte[] data 	= ((DataBufferByte) buffer).getData();
+		int[] offsets 	= model.getBandOffsets();
+		int pixelStride = model.getPixelStride();
+		int lineStride 	= model.getScanlineStride();
+		
+		int width  = raster.getWidth();
+		int height = raster.getHeight();
+		
+		int target = 0;
+		
+		if(offsets.length == 1) {
+			for(int y = 0; y < height; y++) {
+				int source = buffer.getOffset() + y * lineStride + offsets[0];
+				for(int x = 0; x < width; x++, source += pixelStride) {
+					plane[target++] = data[source];
+				}
+			}
+		} else if(offsets.length == 3) {
+			for(int y = 0; y < height; y++) {
+				int source = buffer.getOffset() + y * lineStride;
+				for(int x = 0; x < width; x++, source += pixelStride) {
+					int c0 = data[source + offsets[0]] & 0xFF;
+					int c1 = data[source + offsets[1]] & 0xFF;
+					int c2 = data[source + offsets[2]] & 0xFF;
+					
+					plane[target++] = (byte) Math.max(c0, Math.max(c1, c2));
+				}
+			}
+		} else {
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/** Reads the maximum channel values from packed RGB integer samples (ignoring alpha). */
+	private static boolean maxChannelInts(WritableRaster raster, byte[] plane) {
+		if(!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) return false;
+		
+		SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+		DataBuffer buffer = raster.getDataBuffer();
+		
+		int[] data 		= ((DataBufferInt) buffer).getData();
+		int lineStride 	= model.getScanlineStride();
+		
+		int width  = raster.getWidth();
+		int height = raster.getHeight();
+		
+		int target = 0;
+		
+		for(int y = 0; y < height; y++) {
+			int source = buffer.getOffset() + y * lineStride;
+			for(int x = 0; x < width; x++) {
+				int rgb = data[source + x];
+				
+				int max = Math.max((rgb >>> 16) & 0xFF, Math.max((rgb >>> 8) & 0xFF, rgb & 0xFF));
+				plane[target++] = (byte) max;
+			}
+		}
+		
+		return true;
+	}
+	
 }
@@ -0,0 +1,51 @@
+package hu.rycus86.bioid;
+
+import java.util.Locale;
+
+/**
+ * The available image processing engines for thinning and minutiae extraction.
+ * 
+ * @author viktor.adam
+ */
+public enum Engine {
+	
+	/** Processes the images through the generic raster API one pixel at a time. */
+	RASTER,
+	
+	/** Processes bit-packed images evaluating the masks on 64 pixels at a time. */
+	BITMAP,
+	
+	/** Processes bit-packed images like {@link #BITMAP} but only revisits pixels next to the latest changes while thinning. */
+	INCREMENTAL,
+	
+	/** Processes bit-packed images like {@link #BITMAP} but thins horizontal bands of the image in parallel. */
+	PARALLEL,
+	
+	/**
+	 * Processes bit-packed images like {@link #BITMAP} but evaluates the masks on several words at a time
+	 * with the Java Vector API (falls back to {@link #BITMAP} if it is not available, see {@link VectorKernel}).
+	 */
+	VECTOR;
+	
+	/** The engine used when none is selected explicitly. */
+	public static final Engine DEFAULT = INCREMENTAL;
+	
+	/**
+	 * Returns the engine for the given (case insensitive) name.
+	 * @throws IllegalArgumentException if there is no engine with the given name
+	 */
+	public static Engine parse(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+	}
+	
+	/** Returns the (lower case) names of the engines separated by commas. */
+	public static String names() {
+		StringBuilder builder = new StringBuilder();
+		for(Engine engine : values()) {
+			if(builder.length() > 0) builder.append(", ");
+			builder.append(engine.name().toLowerCase(Locale.ENGLISH));
+		}
+		return builder.toString();
+	}
+	
+}
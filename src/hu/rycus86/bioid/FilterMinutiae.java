@@ -0,0 +1,136 @@
+package hu.rycus86.bioid;
+
+import hu.rycus86.bioid.util.GridIndex;
+import hu.rycus86.bioid.util.Log;
+import hu.rycus86.bioid.util.Minutiae;
+import hu.rycus86.bioid.util.SkeletonGraph;
+
+/**
+ * Helper class for removing false minutiae found by the extractors.
+ * 
+ * Three kinds of false minutiae are removed:
+ * <ul>
+ *   <li>minutiae near the border of the fingerprint (or the image), where the ridges are cut off,</li>
+ *   <li>pairs of endings close to each other without a ridge between them, which are the two sides of a broken ridge,</li>
+ *   <li>endings at the tip of a short arm of a branch together with the branch, which are spurs of a ridge.</li>
+ * </ul>
+ * The fingerprint covers the blocks of the thinned image holding any ridge pixel of its {@link SkeletonGraph}
+ * (the frame the thinning leaves dark around the processed range is not part of it).
+ * The arms and the ridges between the minutiae are queried from the graph,
+ * the endings are looked up in a {@link GridIndex}, so each one is only compared with its near neighbours.
+ * Every rule is checked on the original minutiae, so the result does not depend on their order.
+ * 
+ * @author viktor.adam
+ */
+public class FilterMinutiae {
+	
+	/** The size of the blocks of the fingerprint area. */
+	public static final int BLOCK_SIZE = 12;
+	/** The minimum distance of the kept minutiae from the border of the fingerprint in each direction. */
+	public static final int BORDER_MARGIN = 16;
+	/** The maximum distance of two endings on the sides of a broken ridge. */
+	public static final int BROKEN_RIDGE_DISTANCE = 8;
+	/** The maximum length of a spur (in steps along the ridge from its ending to its branch). */
+	public static final int SPUR_LENGTH = 15;
+	
+	/**
+	 * Removes the false minutiae.
+	 * @param minutiae The minutiae found on the thinned image
+	 * @param graph The graph of the thinned image
+	 * @return The remaining minutiae in their original order
+	 */
+	public static Minutiae execute(Minutiae minutiae, SkeletonGraph graph) {
+		int count = minutiae.size();
+		
+		int width  = graph.getWidth();
+		int height = graph.getHeight();
+		
+		int columns = (width  + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int rows 	= (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		boolean[] foreground = foreground(graph, columns, rows);
+		
+		// the queries reach at most into the neighbouring cells
+		GridIndex index = GridIndex.of(minutiae, width, height, BROKEN_RIDGE_DISTANCE);
+		
+		boolean[] removed = new boolean[count];
+		int[] neighbours  = new int[count];
+		
+		// the junctions with a spur
+		boolean[] spurred = new boolean[graph.getNodeCount()];
+		
+		for(int idx = 0; idx < count; idx++) {
+			int x = minutiae.getX(idx);
+			int y = minutiae.getY(idx);
+			
+			if(!inside(x, y, width, height, columns, foreground)) removed[idx] = true;
+			
+			if(minutiae.getType(idx) != Minutiae.ENDING) continue;
+			
+			int node = graph.getNodeAt(x, y);
+			if(node >= 0 && graph.getDegree(node) == 1 && graph.isSpur(graph.getEdge(node, 0), SPUR_LENGTH + 1)) {
+				removed[idx] = true;
+				spurred[graph.getOther(graph.getEdge(node, 0), node)] = true;
+			}
+			
+			// each pair is found from both of its endings
+			int found = index.within(x, y, BROKEN_RIDGE_DISTANCE, neighbours);
+			for(int n = 0; n < found; n++) {
+				int other = neighbours[n];
+				if(other == idx || minutiae.getType(other) != Minutiae.ENDING) continue;
+				
+				if(graph.ridgeCount(x, y, minutiae.getX(other), minutiae.getY(other)) == 0) {
+					removed[idx] = true;
+				}
+			}
+		}
+		
+		for(int idx = 0; idx < count; idx++) {
+			if(minutiae.getType(idx) != Minutiae.BRANCH) continue;
+			
+			int node = graph.getNodeAt(minutiae.getX(idx), minutiae.getY(idx));
+			if(node >= 0 && spurred[node]) removed[idx] = true;
+		}
+		
+		Minutiae result = new Minutiae(count);
+		
+		for(int idx = 0; idx < count; idx++) {
+			if(removed[idx]) continue;
+			
+			int added = result.add(minutiae.getType(idx), minutiae.getX(idx), minutiae.getY(idx));
+			if(minutiae.hasAngles()) result.setAngle(added, minutiae.getAngle(idx));
+		}
+		
+		Log.info(() -> "Removed " + (count - result.size()) + " false minutia(e)");
+		
+		return result;
+	}
+	
+	/** Returns the blocks holding any ridge pixel of the graph. */
+	private static boolean[] foreground(SkeletonGraph graph, int columns, int rows) {
+		boolean[] foreground = new boolean[columns * rows];
+		
+		for(int y = 0; y < graph.getHeight(); y++) {
+			for(int x = 0; x < graph.getWidth(); x++) {
+				if(graph.isRidge(x, y)) foreground[(y / BLOCK_SIZE) * columns + x / BLOCK_SIZE] = true;
+			}
+		}
+		
+		return foreground;
+	}
+	
+	/** Returns true if the fingerprint reaches the margin in all 8 directions from the given point. */
+	private static boolean inside(int x, int y, int width, int height, int columns, boolean[] foreground) {
+		for(int dy = -1; dy <= 1; dy++) {
+			for(int dx = -1; dx <= 1; dx++) {
+				int px = x + dx * BORDER_MARGIN;
+				int py = y + dy * BORDER_MARGIN;
+				
+				if(px < 0 || py < 0 || px >= width || py >= height) return false;
+				if(!foreground[(py / BLOCK_SIZE) * columns + px / BLOCK_SIZE]) return false;
+			}
+		}
+		
+		return true;
+	}
+	
+}
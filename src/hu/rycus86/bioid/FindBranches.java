@@ -1,14 +1,16 @@
 package hu.rycus86.bioid;
 
+import hu.rycus86.bioid.util.BinaryImage;
 import hu.rycus86.bioid.util.Log;
-import hu.rycus86.bioid.util.Point;
+import hu.rycus86.bioid.util.Minutiae;
+import hu.rycus86.bioid.util.Neighbourhood;
+import hu.rycus86.bioid.util.RidgeTracer;
 import hu.rycus86.bioid.util.Util;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * Helper class for finding branches on a binarized image.
@@ -21,10 +23,10 @@ public class FindBranches {
 	 * Searches for branches on the given image.
 	 * @param binarized A binarized image
 	 * @param g A graphics for an image to draw circles around found branches
-	 * @return The list of coordinates for the found branches
+	 * @return The coordinates of the found branches
 	 */
-	public static List<Point> execute(BufferedImage binarized, Graphics g) {
-		List<Point> foundPoints = new LinkedList<>();
+	public static Minutiae execute(BufferedImage binarized, Graphics g) {
+		Minutiae foundPoints = new Minutiae();
 		
 		WritableRaster source = binarized.getRaster();
 		
@@ -35,44 +37,124 @@ public class FindBranches {
 				
 				source.getPixels(x - 1, y - 1, 3, 3, kernel);
 				
-				int[] m = branch_mask;
-				boolean match = Util.matches(kernel, m);
-				if(!match) {
-					for(int rotate = 0; rotate < 3 && !match; rotate++) {
-						m = Util.rotateCounterClockwise(m);
-						match = Util.matches(kernel, m);
-					}
-				}
-				
-				if(match) {
-					for(int idx = 0; idx < 9 && match; idx++) {
-						if(idx == 4) continue;
-						if(m[idx] == 0x00) {
-							int dx = (idx % 3) - 1;
-							int dy = (idx / 3) - 1;
-							
-							int maxlen = 10;
-							int len = Util.branchLength(x, y, x + dx, y + dy, source, maxlen, m);
-							if(len < maxlen) {
-								match = false;
-							}
-						}
-					}
-				}
+				boolean match = kernel[4] == 0x00 && isBranch(x, y, Neighbourhood.code(kernel), source);
 				
 				if(match) {
 					g.drawOval(x - 2, y - 2, 5, 5);
-					foundPoints.add(new Point(x, y));
+					foundPoints.add(Minutiae.BRANCH, x, y);
 				}
 				
 			}
 		}
 		
-		Log.info("Found " + foundPoints.size() + " branch(es)");
+		Log.info(() -> "Found " + foundPoints.getBranchCount() + " branch(es)");
+		
+		return foundPoints;
+	}
+	
+	/**
+	 * Searches for branches on the given bit-packed image.
+	 * @param binarized A bit-packed binarized image
+	 * @param g A graphics for an image to draw circles around found branches
+	 * @return The coordinates of the found branches
+	 */
+	public static Minutiae execute(BinaryImage binarized, Graphics g) {
+		Minutiae foundPoints = new Minutiae();
+		
+		int width  = binarized.getWidth();
+		int stride = binarized.getStride();
+		long[] words = binarized.getWords();
+		
+		for(int y = 1; y < binarized.getHeight() - 2; y++) {
+			for(int index = 0; index < stride; index++) {
+				long candidates = words[y * stride + index] & BinaryImage.columnMask(index, 1, width - 3);
+				
+				while(candidates != 0L) {
+					int x = (index << 6) + Long.numberOfTrailingZeros(candidates);
+					candidates &= candidates - 1;
+					
+					boolean match = isBranch(x, y, Neighbourhood.code(binarized.window(x, y)), binarized);
+					
+					if(match) {
+						g.drawOval(x - 2, y - 2, 5, 5);
+						foundPoints.add(Minutiae.BRANCH, x, y);
+					}
+				}
+			}
+		}
+		
+		Log.info(() -> "Found " + foundPoints.getBranchCount() + " branch(es)");
 		
 		return foundPoints;
 	}
 	
+	/**
+	 * Returns true if the dark pixel at (x, y) is a branch on the given raster.
+	 * @param x The X coordinate of the pixel
+	 * @param y The Y coordinate of the pixel
+	 * @param code The neighbour code of the pixel
+	 * @param raster Raster object holding the image data
+	 */
+	static boolean isBranch(int x, int y, int code, Raster raster) {
+		int rotation = branch_table[code];
+		if(rotation < 0) return false;
+		
+		// the first matching rotation decides the arms to check
+		int[] m = branch_masks[rotation];
+		
+		RidgeTracer tracer = RidgeTracer.get();
+		
+		for(int idx = 0; idx < 9; idx++) {
+			if(idx == 4) continue;
+			if(m[idx] == 0x00) {
+				int dx = (idx % 3) - 1;
+				int dy = (idx / 3) - 1;
+				
+				int len = tracer.branchLength(x, y, x + dx, y + dy, raster, MIN_ARM_LENGTH, m);
+				if(len < MIN_ARM_LENGTH) {
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns true if the dark pixel at (x, y) is a branch on the given bit-packed image.
+	 * @param x The X coordinate of the pixel
+	 * @param y The Y coordinate of the pixel
+	 * @param code The neighbour code of the pixel
+	 * @param image The bit-packed image data
+	 */
+	static boolean isBranch(int x, int y, int code, BinaryImage image) {
+		int rotation = branch_table[code];
+		if(rotation < 0) return false;
+		
+		// the first matching rotation decides the arms to check
+		int[] m = branch_masks[rotation];
+		
+		RidgeTracer tracer = RidgeTracer.get();
+		
+		for(int idx = 0; idx < 9; idx++) {
+			if(idx == 4) continue;
+			if(m[idx] == 0x00) {
+				int dx = (idx % 3) - 1;
+				int dy = (idx / 3) - 1;
+				
+				int len = tracer.branchLength(x, y, x + dx, y + dy, image, MIN_ARM_LENGTH, m);
+				if(len < MIN_ARM_LENGTH) {
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	/** The minimum length of each arm of a branch. */
+	static final int MIN_ARM_LENGTH = 10;
+	
 	/** A mask pattern for branch start detection. */
 	private static int[] branch_mask = new int[] {
 		// 0xAA -- don't care
@@ -81,4 +163,16 @@ public class FindBranches {
 		0xAA, 0xAA, 0xAA
 	};
 	
+	/** The mask pattern for branch start detection in all 4 rotations. */
+	private static final int[][] branch_masks = new int[4][];
+	static {
+		branch_masks[0] = branch_mask;
+		for(int rotate = 1; rotate < 4; rotate++) {
+			branch_masks[rotate] = Util.rotateCounterClockwise(branch_masks[rotate - 1]);
+		}
+	}
+	
+	/** The index of the first matching rotation of the branch mask for each neighbour code (-1 if none). */
+	private static final byte[] branch_table = Neighbourhood.compile(branch_masks);
+	
 }
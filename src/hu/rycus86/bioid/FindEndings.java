@@ -1,13 +1,13 @@
 package hu.rycus86.bioid;
 
+import hu.rycus86.bioid.util.BinaryImage;
 import hu.rycus86.bioid.util.Log;
-import hu.rycus86.bioid.util.Point;
+import hu.rycus86.bioid.util.Minutiae;
+import hu.rycus86.bioid.util.Neighbourhood;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * Helper class for finding endings on a binarized image.
@@ -20,10 +20,10 @@ public class FindEndings {
 	 * Searches for endings on the given image.
 	 * @param binarized A binarized image
 	 * @param g A graphics for an image to draw circles around found endings
-	 * @return The list of coordinates for the found endings
+	 * @return The coordinates of the found endings
 	 */
-	public static List<Point> execute(BufferedImage binarized, Graphics g) {
-		List<Point> foundPoints = new LinkedList<>();
+	public static Minutiae execute(BufferedImage binarized, Graphics g) {
+		Minutiae foundPoints = new Minutiae();
 		
 		WritableRaster source = binarized.getRaster();
 		
@@ -39,32 +39,85 @@ public class FindEndings {
 				if(window[4] != 0x00) {
 					match = false;
 				} else {
-					int darkPixels = 0;
-					for(int px : window) {
-						if(px == 0x00) darkPixels++;
-					}
-					
-					if(darkPixels == 3) {
-						if(window[0] == 0x00) darkPixels--;
-						if(window[2] == 0x00) darkPixels--;
-						if(window[6] == 0x00) darkPixels--;
-						if(window[8] == 0x00) darkPixels--;
-					}
-					
-					match = darkPixels == 2;
+					match = isEnding(Neighbourhood.code(window));
 				}
 				
 				if(match) {
 					g.drawOval(x - 2, y - 2, 5, 5);
-					foundPoints.add(new Point(x, y));
+					foundPoints.add(Minutiae.ENDING, x, y);
 				}
 				
 			}
 		}
 		
-		Log.info("Found " + foundPoints.size() + " ending(s)");
+		Log.info(() -> "Found " + foundPoints.getEndingCount() + " ending(s)");
+		
+		return foundPoints;
+	}
+	
+	/**
+	 * Searches for endings on the given bit-packed image.
+	 * @param binarized A bit-packed binarized image
+	 * @param g A graphics for an image to draw circles around found endings
+	 * @return The coordinates of the found endings
+	 */
+	public static Minutiae execute(BinaryImage binarized, Graphics g) {
+		Minutiae foundPoints = new Minutiae();
+		
+		int width  = binarized.getWidth();
+		int stride = binarized.getStride();
+		long[] words = binarized.getWords();
+		
+		for(int y = 1; y < binarized.getHeight() - 2; y++) {
+			for(int index = 0; index < stride; index++) {
+				// only dark pixels can be endings, white words are skipped at once
+				long candidates = words[y * stride + index] & BinaryImage.columnMask(index, 1, width - 3);
+				
+				while(candidates != 0L) {
+					int x = (index << 6) + Long.numberOfTrailingZeros(candidates);
+					candidates &= candidates - 1;
+					
+					if(isEnding(Neighbourhood.code(binarized.window(x, y)))) {
+						g.drawOval(x - 2, y - 2, 5, 5);
+						foundPoints.add(Minutiae.ENDING, x, y);
+					}
+				}
+			}
+		}
+		
+		Log.info(() -> "Found " + foundPoints.getEndingCount() + " ending(s)");
 		
 		return foundPoints;
 	}
 	
+	/** Returns true if the given neighbour code of a dark pixel describes an ending. */
+	static boolean isEnding(int code) {
+		return ending_table[code];
+	}
+	
+	/** Returns true if the window of a dark pixel describes an ending. */
+	private static boolean isEnding(int[] window) {
+		int darkPixels = 0;
+		for(int px : window) {
+			if(px == 0x00) darkPixels++;
+		}
+		
+		if(darkPixels == 3) {
+			if(window[0] == 0x00) darkPixels--;
+			if(window[2] == 0x00) darkPixels--;
+			if(window[6] == 0x00) darkPixels--;
+			if(window[8] == 0x00) darkPixels--;
+		}
+		
+		return darkPixels == 2;
+	}
+	
+	/** Tells for each neighbour code of a dark pixel whether it is an ending. */
+	private static final boolean[] ending_table = new boolean[Neighbourhood.CODES];
+	static {
+		for(int code = 0; code < Neighbourhood.CODES; code++) {
+			ending_table[code] = isEnding(Neighbourhood.window(code));
+		}
+	}
+	
 }
@@ -0,0 +1,144 @@
+package hu.rycus86.bioid;
+
+import hu.rycus86.bioid.util.BinaryImage;
+import hu.rycus86.bioid.util.Log;
+import hu.rycus86.bioid.util.Minutiae;
+import hu.rycus86.bioid.util.Neighbourhood;
+import hu.rycus86.bioid.util.SkeletonGraph;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * Helper class for finding endings and branches on a binarized image in a single scan.
+ * 
+ * The results are the same as the ones of {@link FindEndings} and {@link FindBranches},
+ * drawing them is left to the caller.
+ * The endings and branches of a {@link SkeletonGraph} can be collected too, without walking the arms of the candidates.
+ * 
+ * @author viktor.adam
+ */
+public class FindMinutiae {
+	
+	/**
+	 * Searches for endings and branches on the given image.
+	 * @param binarized A binarized image
+	 * @return The coordinates of the found endings and branches
+	 */
+	public static Minutiae execute(BufferedImage binarized) {
+		Minutiae minutiae = new Minutiae();
+		
+		Raster source = binarized.getRaster();
+		
+		int width  = binarized.getWidth();
+		int height = binarized.getHeight();
+		
+		int[] above = new int[width];
+		int[] row 	= new int[width];
+		int[] below = new int[width];
+		
+		if(height > 3) {
+			source.getSamples(0, 0, width, 1, 0, row);
+			source.getSamples(0, 1, width, 1, 0, below);
+		}
+		
+		for(int y = 1; y < height - 2; y++) {
+			int[] swap = above;
+			above = row;
+			row   = below;
+			below = swap;
+			
+			source.getSamples(0, y + 1, width, 1, 0, below);
+			
+			for(int x = 1; x < width - 2; x++) {
+				if(row[x] != 0x00) continue;
+				
+				int code = Neighbourhood.code(above, row, below, x);
+				
+				if(FindEndings.isEnding(code)) {
+					minutiae.add(Minutiae.ENDING, x, y);
+				}
+				
+				if(FindBranches.isBranch(x, y, code, source)) {
+					minutiae.add(Minutiae.BRANCH, x, y);
+				}
+			}
+		}
+		
+		Log.info(() -> "Found " + minutiae.getEndingCount() + " ending(s)");
+		Log.info(() -> "Found " + minutiae.getBranchCount() + " branch(es)");
+		
+		return minutiae;
+	}
+	
+	/**
+	 * Searches for endings and branches on the given bit-packed image.
+	 * @param binarized A bit-packed binarized image
+	 * @return The coordinates of the found endings and branches
+	 */
+	public static Minutiae execute(BinaryImage binarized) {
+		Minutiae minutiae = new Minutiae();
+		
+		int width  = binarized.getWidth();
+		int stride = binarized.getStride();
+		long[] words = binarized.getWords();
+		
+		for(int y = 1; y < binarized.getHeight() - 2; y++) {
+			for(int index = 0; index < stride; index++) {
+				// only dark pixels can be minutiae, white words are skipped at once
+				long candidates = words[y * stride + index] & BinaryImage.columnMask(index, 1, width - 3);
+				
+				while(candidates != 0L) {
+					int x = (index << 6) + Long.numberOfTrailingZeros(candidates);
+					candidates &= candidates - 1;
+					
+					int code = Neighbourhood.code(binarized.window(x, y));
+					
+					if(FindEndings.isEnding(code)) {
+						minutiae.add(Minutiae.ENDING, x, y);
+					}
+					
+					if(FindBranches.isBranch(x, y, code, binarized)) {
+						minutiae.add(Minutiae.BRANCH, x, y);
+					}
+				}
+			}
+		}
+		
+		Log.info(() -> "Found " + minutiae.getEndingCount() + " ending(s)");
+		Log.info(() -> "Found " + minutiae.getBranchCount() + " branch(es)");
+		
+		return minutiae;
+	}
+	
+	/**
+	 * Collects the endings and branches of the given skeleton graph.
+	 * Endings at the tip of spurs (arms shorter than {@link FindBranches#MIN_ARM_LENGTH} hanging from a junction)
+	 * are left out, junctions are branches if at least 3 of their arms are not such spurs.
+	 * @param graph The graph of a thinned image
+	 * @return The coordinates of the found endings and branches (in the order of the nodes)
+	 */
+	public static Minutiae execute(SkeletonGraph graph) {
+		Minutiae minutiae = new Minutiae();
+		
+		for(int node = 0; node < graph.getNodeCount(); node++) {
+			int x = graph.getNodeX(node);
+			int y = graph.getNodeY(node);
+			byte type = graph.getNodeType(node);
+			
+			if(type == SkeletonGraph.ENDING) {
+				if(graph.getDegree(node) > 0 && graph.isSpur(graph.getEdge(node, 0), FindBranches.MIN_ARM_LENGTH)) continue;
+				
+				minutiae.add(Minutiae.ENDING, x, y);
+			} else if(graph.isBranch(node, FindBranches.MIN_ARM_LENGTH)) {
+				minutiae.add(Minutiae.BRANCH, x, y);
+			}
+		}
+		
+		Log.info(() -> "Found " + minutiae.getEndingCount() + " ending(s)");
+		Log.info(() -> "Found " + minutiae.getBranchCount() + " branch(es)");
+		
+		return minutiae;
+	}
+	
+}
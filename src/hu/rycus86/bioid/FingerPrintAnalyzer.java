@@ -1,9 +1,19 @@
 package hu.rycus86.bioid;
 
+import hu.rycus86.bioid.util.BinaryImage;
 import hu.rycus86.bioid.util.ByteFlag;
+import hu.rycus86.bioid.util.GridIndex;
+import hu.rycus86.bioid.util.ImageDecoder;
 import hu.rycus86.bioid.util.Log;
-import hu.rycus86.bioid.util.Point;
+import hu.rycus86.bioid.util.Metrics;
+import hu.rycus86.bioid.util.Metrics.Stage;
+import hu.rycus86.bioid.util.Minutiae;
+import hu.rycus86.bioid.util.NormalizedMinutiae;
+import hu.rycus86.bioid.util.ResultCache;
 import hu.rycus86.bioid.util.Serializer;
+import hu.rycus86.bioid.util.SkeletonGraph;
+import hu.rycus86.bioid.util.Template;
+import hu.rycus86.bioid.util.TemplateReader;
 import hu.rycus86.bioid.util.Util;
 
 import java.awt.AWTEvent;
@@ -25,11 +35,11 @@ import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 import javax.swing.JComponent;
@@ -46,64 +56,340 @@ public class FingerPrintAnalyzer {
 	/** The threshold used for binarization. */
 	private static int BINARIZATION_THRESHOLD = 0x7F;
 	
+	/** Use adaptive (local mean) binarization instead of the global threshold? */
+	private static boolean ADAPTIVE_BINARIZATION = false;
+	/** The radius of the window for adaptive binarization. */
+	private static int ADAPTIVE_RADIUS = 12;
+	/** How much darker than the local mean a dark pixel has to be (in percents) for adaptive binarization. */
+	private static int ADAPTIVE_PERCENT = 10;
+	
+	/** The engine used for thinning and minutiae extraction. */
+	private static Engine ENGINE = Engine.DEFAULT;
+	
+	/** Run without any graphical user interface (batch mode)? */
+	private static boolean HEADLESS = false;
+	/** Write the annotated processed image into the output directory? */
+	private static boolean ANNOTATE = false;
+	/** Write the results as text too (besides the binary template)? */
+	private static boolean TEXT_OUTPUT = false;
+	/** Remove the false minutiae (see {@link FilterMinutiae})? */
+	private static boolean FILTER_MINUTIAE = false;
+	/** Extract the minutiae from the graph of the skeleton (see {@link SkeletonGraph})? */
+	private static boolean GRAPH_EXTRACTION = false;
+	
+	/** The template of the claimed identity to verify the images against (or null). */
+	private static Template VERIFY_TEMPLATE = null;
+	/** The gallery to identify the images in (or null). */
+	private static Gallery GALLERY = null;
+	/** The number of best candidates to report on identification. */
+	private static int IDENTIFY_CANDIDATES = 10;
+	
+	/** The thresholds to analyze each image with in a threshold sweep (or null). */
+	private static int[] SWEEP_THRESHOLDS = null;
+	
+	/** The cache of the results of earlier runs (or null). */
+	private static ResultCache CACHE = null;
+	/** The maximum total size of the cached results (in megabytes). */
+	private static long CACHE_SIZE = 256;
+	/** The version of the analyzation results, has to be increased when the skeleton or the minutiae of an image change. */
+	private static final int RESULT_VERSION = 1;
+	
+	/** The minimum vertical distance of the leader lines of the minutiae on the annotated image. */
+	private static final int LABEL_SPACING = 50;
+	
+	/** The reusable thinning planes of the current worker thread. */
+	private static final ThreadLocal<ThinningContext> THINNING_CONTEXT = new ThreadLocal<ThinningContext>() {
+		/* @see java.lang.ThreadLocal#initialValue() */
+		@Override protected ThinningContext initialValue() { return new ThinningContext(); }
+	};
+	
 	/** The path of the image file. */
 	private final String path;
+	/** The base name for the output files. */
+	private final String name;
+	/** The metrics of the analyzation (or null if they are not collected). */
+	private final Metrics.Sample metrics;
+	
+	/** The key of the result in the cache (or null). */
+	private String cacheKey;
+	/** Was the result found in the cache? */
+	private boolean cached;
 	
 	/** The original image. */
 	private BufferedImage originalImage;
+	/** The thinned image (for the raster engine). */
+	private BufferedImage thinnedImage;
+	/** The thinned bit-packed image (for the bitmap engines). */
+	private BinaryImage thinnedBitmap;
 	/** The final image. */
 	private BufferedImage processedImage;
 	
-	/** The list of coordinates for found endings. */
-	private List<Point> endings;
-	/** The list of coordinates for found branches. */
-	private List<Point> branches;
+	/** The found endings and branches. */
+	private Minutiae minutiae;
 	
 	/** Constructor. */
 	public FingerPrintAnalyzer(String path) {
+		this(path, outputName(path));
+	}
+	
+	/** Constructor for writing the output files with the given base name. */
+	FingerPrintAnalyzer(String path, String name) {
 		this.path = path;
+		this.name = name;
+		this.metrics = Metrics.start(name);
+	}
+	
+	/** Returns the base name for the output files of the given image path. */
+	static String outputName(String path) {
+		String name = path;
+		if(name.contains("/")) name = name.substring(name.lastIndexOf('/') + 1);
+		if(name.contains(".")) name = name.substring(0, name.lastIndexOf('.'));
+		return name;
+	}
+	
+	/** Returns the base name for the output files. */
+	String getName() {
+		return name;
+	}
+	
+	/** Returns the found endings and branches. */
+	Minutiae getMinutiae() {
+		return minutiae;
 	}
 	
 	/** Executes all operations on the original image and produces output. */
 	private void execute(int binarizeThreshold) {
+		if(!decode()) {
+			return;
+		}
+		
+		thin(binarizeThreshold);
+		extract();
+	}
+	
+	/** Reads the original image (or the cached result), returns false if it could not be read. */
+	boolean decode() {
+		long start = System.nanoTime();
+		
+		// the original image is only needed for presenting it
+		if(CACHE != null && lookup() && HEADLESS) {
+			time(Stage.DECODE, start);
+			return true;
+		}
+		
 		try {
-			originalImage = ImageIO.read(new File(path));
+			originalImage = ImageDecoder.get().read(new File(path));
 		} catch(Exception ex) {
 			Log.error("Failed to read original image", ex);
 		}
 		
-		if(originalImage == null) {
-			return;
+		time(Stage.DECODE, start);
+		
+		return originalImage != null;
+	}
+	
+	/** Loads the result from the cache if it has been stored by an earlier run, returns true on a hit. */
+	private boolean lookup() {
+		String parameters = "version=" + RESULT_VERSION + ";" + (ADAPTIVE_BINARIZATION
+				? "adaptive=" + ADAPTIVE_RADIUS + ":" + ADAPTIVE_PERCENT
+				: "threshold=" + BINARIZATION_THRESHOLD) + (GRAPH_EXTRACTION ? ";graph" : "");
+		
+		try {
+			cacheKey = CACHE.key(new File(path), parameters);
+		} catch(Exception ex) {
+			Log.error("Failed to compute the cache key", ex);
+			return false;
+		}
+		
+		ResultCache.Result result = CACHE.get(cacheKey);
+		if(result == null) return false;
+		
+		Log.info(() -> "Cached result found: " + path);
+		
+		thinnedBitmap = result.getSkeleton();
+		minutiae 	  = result.getMinutiae();
+		cached 		  = true;
+		
+		return true;
+	}
+	
+	/** Binarizes and thins the original image (the result is held by the context of the current thread). */
+	void thin(int binarizeThreshold) {
+		if(cached) return;
+		
+		Log.info(() -> "Processing: " + path);
+		
+		long start = System.nanoTime();
+		
+		BufferedImage binarized = ADAPTIVE_BINARIZATION
+				? Binarize.executeAdaptive(originalImage, ADAPTIVE_RADIUS, ADAPTIVE_PERCENT)
+				: Binarize.execute(originalImage, binarizeThreshold);
+		
+		time(Stage.BINARIZE, start);
+		
+		thinBinarized(binarized);
+	}
+	
+	/**
+	 * Binarizes the maximum channel plane of the original image with the given threshold and thins it
+	 * (the result is held by the context of the current thread).
+	 * @param plane The maximum channel plane (see {@link Binarize#maxChannelPlane(BufferedImage, byte[])})
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param binarizeThreshold The threshold used for binarization
+	 */
+	void thin(byte[] plane, int width, int height, int binarizeThreshold) {
+		Log.info(() -> "Processing: " + path + " with threshold " + binarizeThreshold);
+		
+		long start = System.nanoTime();
+		
+		BufferedImage binarized = Binarize.execute(plane, width, height, binarizeThreshold);
+		
+		time(Stage.BINARIZE, start);
+		
+		thinBinarized(binarized);
+	}
+	
+	/** Thins the binarized image (the result is held by the context of the current thread). */
+	private void thinBinarized(BufferedImage binarized) {
+		long start = System.nanoTime();
+		
+		ThinningContext context = THINNING_CONTEXT.get();
+		
+		if(ENGINE == Engine.RASTER) {
+			context.load(binarized);
+			executeThinning(context);
+			
+			thinnedImage = context.getImage();
+		} else {
+			context.loadBitmap(binarized);
+			executeThinning(context);
+			
+			thinnedBitmap = context.getBitmap();
 		}
 		
-		Log.info("Processing: " + path);
+		time(Stage.THINNING, start);
+	}
+	
+	/**
+	 * Replaces the thinned image held by the context of the current thread with a copy
+	 * so it can be passed to another thread, and drops the original image.
+	 */
+	void detach() {
+		if(thinnedImage != null) {
+			BufferedImage copy = new BufferedImage(thinnedImage.getWidth(), thinnedImage.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+			copy.setData(thinnedImage.getRaster());
+			thinnedImage = copy;
+		}
 		
-		BufferedImage binarized = Binarize.execute(originalImage, binarizeThreshold);
-		BufferedImage thinned	= executeThinning(binarized);
+		if(thinnedBitmap != null && !cached) {
+			BinaryImage copy = new BinaryImage(thinnedBitmap.getWidth(), thinnedBitmap.getHeight());
+			copy.copyFrom(thinnedBitmap);
+			thinnedBitmap = copy;
+		}
 		
-		processedImage = Util.toRGBImage(thinned);
-		produceTargetImage(thinned);
+		originalImage = null;
 	}
 	
-	/** Executes the Thinning algorithm as many times as needed. */
-	private BufferedImage executeThinning(BufferedImage image) {
+	/** Finds the minutiae on the thinned image and produces the target image if needed. */
+	void extract() {
+		long start = System.nanoTime();
+		
+		SkeletonGraph graph = null;
+		
+		if(cached) {
+			if(isRendering()) processedImage = Util.toRGBImage(thinnedBitmap.toImage());
+		} else if(thinnedImage != null) {
+			if(isRendering()) processedImage = Util.toRGBImage(thinnedImage);
+			if(GRAPH_EXTRACTION) {
+				graph 	 = SkeletonGraph.build(BinaryImage.fromImage(thinnedImage));
+				minutiae = FindMinutiae.execute(graph);
+			} else {
+				minutiae = FindMinutiae.execute(thinnedImage);
+			}
+			
+			if(cacheKey != null) CACHE.put(cacheKey, BinaryImage.fromImage(thinnedImage), minutiae);
+		} else {
+			if(isRendering()) processedImage = Util.toRGBImage(thinnedBitmap.toImage());
+			if(GRAPH_EXTRACTION) {
+				graph 	 = SkeletonGraph.build(thinnedBitmap);
+				minutiae = FindMinutiae.execute(graph);
+			} else {
+				minutiae = FindMinutiae.execute(thinnedBitmap);
+			}
+			
+			if(cacheKey != null) CACHE.put(cacheKey, thinnedBitmap, minutiae);
+		}
+		
+		if(FILTER_MINUTIAE) {
+			// the cache holds the minutiae before filtering
+			if(graph == null) {
+				graph = SkeletonGraph.build(thinnedImage != null ? BinaryImage.fromImage(thinnedImage) : thinnedBitmap);
+			}
+			
+			minutiae = FilterMinutiae.execute(minutiae, graph);
+		}
+		
+		thinnedImage  = null;
+		thinnedBitmap = null;
+		
+		if(isRendering()) produceTargetImage();
+		
+		time(Stage.EXTRACT, start);
+		
+		if(metrics != null) metrics.found(minutiae.getEndingCount(), minutiae.getBranchCount());
+	}
+	
+	/** Returns true if the annotated processed image is needed (for the user interface or the output). */
+	private static boolean isRendering() {
+		return !HEADLESS || ANNOTATE;
+	}
+	
+	/** Records an execution of the given stage started at the given time if metrics are collected. */
+	private void time(Stage stage, long start) {
+		if(metrics != null) metrics.time(stage, start);
+	}
+	
+	/** Executes the Thinning algorithm as many times as needed on the image loaded into the context. */
+	private void executeThinning(ThinningContext context) {
 		int runs = 0;
 		
 		ByteFlag changed = new ByteFlag(false);
 		
-		BufferedImage thinned = image;
+		IncrementalThinning incremental = ENGINE == Engine.INCREMENTAL ? context.getIncremental() : null;
+		
+		// the engines count the pixels they remove
+		int removed = 0;
+		
 		do {
-			thinned = Thinning.execute(thinned, changed);
+			long start = System.nanoTime();
+			
+			if(incremental != null) {
+				incremental.execute(changed);
+			} else if(ENGINE == Engine.PARALLEL) {
+				Thinning.executeParallel(context, changed);
+			} else if(ENGINE == Engine.VECTOR) {
+				Thinning.executeVector(context, changed);
+			} else {
+				Thinning.execute(context, changed);
+			}
 			runs++;
+			
+			if(metrics != null) {
+				metrics.time(Stage.THINNING_ITERATION, start);
+				
+				int total = incremental != null ? incremental.getRemoved() : context.getRemoved();
+				metrics.removed(total - removed);
+				removed = total;
+			}
 		} while(changed.get());
-
-		Log.info("Ran thinning " + runs + " times");
 		
-		return thinned;
+		int executions = runs;
+		Log.info(() -> "Ran thinning " + executions + " times");
 	}
 	
 	/** Produces the target image for presenting it to the user. */
-	private void produceTargetImage(BufferedImage rawImage) {
+	private void produceTargetImage() {
 		int width  = processedImage.getWidth();
 		int height = processedImage.getHeight();
 		
@@ -114,58 +400,101 @@ public class FingerPrintAnalyzer {
 		Stroke defaultStroke = graphics.getStroke();
 		Stroke dashedStroke  = new BasicStroke(1f, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER, 1f, new float[] { 3f, 3f }, 0f);
 		
+		int count = minutiae.size();
+		
 		graphics.setColor(Color.RED);
-		endings = FindEndings.execute(rawImage, graphics);
+		for(int index = 0; index < count; index++) {
+			if(minutiae.getType(index) != Minutiae.ENDING) continue;
+			graphics.drawOval(minutiae.getX(index) - 2, minutiae.getY(index) - 2, 5, 5);
+		}
 		
-		Set<Integer> processedAreas = new HashSet<>();
-		processedAreas.add(0);
+		// the leader lines start on the margin at least LABEL_SPACING pixels apart (and away from the label)
+		GridIndex anchors = new GridIndex(width, height, LABEL_SPACING);
+		anchors.add(50, 0);
 		
-		for(Point pt : endings) {
-			int area = pt.y / 50;
-			if(processedAreas.contains(area)) continue;
+		for(int index = 0; index < count; index++) {
+			if(minutiae.getType(index) != Minutiae.ENDING) continue;
 			
-			if(pt.x < width / 2) {
+			int x = minutiae.getX(index);
+			int y = minutiae.getY(index);
+			
+			if(x < width / 2 && anchors.within(50, y, LABEL_SPACING - 1, null) == 0) {
 				graphics.setStroke(dashedStroke);
-				graphics.drawLine(50, pt.y, pt.x - 5, pt.y);
+				graphics.drawLine(50, y, x - 5, y);
 				graphics.setStroke(defaultStroke);
-				graphics.drawLine(40 - pt.y / 25, 30, 50, pt.y);
+				graphics.drawLine(40 - y / 25, 30, 50, y);
 			
-				processedAreas.add(area);
+				anchors.add(50, y);
 			}
 		}
 		
-		String strEndings = endings.size() + " ending" + (endings.size() > 1 ? "s" : "");
+		int endings = minutiae.getEndingCount();
+		String strEndings = endings + " ending" + (endings > 1 ? "s" : "");
 		graphics.drawString(strEndings, 10, 30 - graphics.getFontMetrics().getDescent() - 2);
 		
 		graphics.setColor(Color.BLUE);
-		branches = FindBranches.execute(rawImage, graphics);
+		for(int index = 0; index < count; index++) {
+			if(minutiae.getType(index) != Minutiae.BRANCH) continue;
+			graphics.drawOval(minutiae.getX(index) - 2, minutiae.getY(index) - 2, 5, 5);
+		}
 		
-		processedAreas.clear();
-		processedAreas.add(height / 50);
+		anchors = new GridIndex(width, height, LABEL_SPACING);
+		anchors.add(width - 50, height);
 		
-		for(Point pt : branches) {
-			int area = pt.y / 50;
-			if(processedAreas.contains(area)) continue;
+		for(int index = 0; index < count; index++) {
+			if(minutiae.getType(index) != Minutiae.BRANCH) continue;
 			
-			if(pt.x > width / 2) {
+			int x = minutiae.getX(index);
+			int y = minutiae.getY(index);
+			
+			if(x > width / 2 && anchors.within(width - 50, y, LABEL_SPACING - 1, null) == 0) {
 				graphics.setStroke(dashedStroke);
-				graphics.drawLine(pt.x + 5, pt.y, width - 50, pt.y);
+				graphics.drawLine(x + 5, y, width - 50, y);
 				graphics.setStroke(defaultStroke);
-				graphics.drawLine(width - 50, pt.y, width - 10 - pt.y / 25, height - 30);
+				graphics.drawLine(width - 50, y, width - 10 - y / 25, height - 30);
 			
-				processedAreas.add(area);
+				anchors.add(width - 50, y);
 			}
 		}
 		
-		String strBranches = branches.size() + " branch" + (branches.size() > 1 ? "es" : "");
+		int branches = minutiae.getBranchCount();
+		String strBranches = branches + " branch" + (branches > 1 ? "es" : "");
 		graphics.drawString(strBranches, 
 				width - graphics.getFontMetrics().stringWidth(strBranches) - 10, 
 				height - 30 + graphics.getFontMetrics().getAscent() + 2);
 	}
 	
 	/** Produces an output file from the results of the analyzation. */
-	private void produceOutput(String outputName) {
-		Serializer.write(path, outputName, endings, branches);
+	void produceOutput(String outputName) {
+		long start = System.nanoTime();
+		
+		Serializer.writeTemplate(path, outputName, minutiae);
+		
+		if(TEXT_OUTPUT) {
+			Serializer.write(path, outputName, minutiae);
+		}
+		
+		if(ANNOTATE) {
+			Serializer.writeImage(outputName, processedImage);
+		}
+		
+		time(Stage.SERIALIZE, start);
+		
+		if(VERIFY_TEMPLATE != null) {
+			double score = Matcher.match(minutiae, VERIFY_TEMPLATE.getMinutiae());
+			Log.info(() -> "Match score against " + VERIFY_TEMPLATE.getSource() + ": " + String.format("%.4f", score));
+		}
+		
+		if(GALLERY != null) {
+			List<Gallery.Candidate> candidates = GALLERY.identify(new NormalizedMinutiae(minutiae), IDENTIFY_CANDIDATES);
+			for(int idx = 0; idx < candidates.size(); idx++) {
+				int rank = idx + 1;
+				Gallery.Candidate candidate = candidates.get(idx);
+				Log.info(() -> "Candidate #" + rank + ": " + candidate);
+			}
+		}
+		
+		if(metrics != null) metrics.finish();
 	}
 	
 	/** Presents the original and the processed image for the user on a graphical user interface. */
@@ -267,9 +596,105 @@ public class FingerPrintAnalyzer {
 				BINARIZATION_THRESHOLD = Integer.parseInt(argument);
 				// shift arguments by one
 				args = Arrays.copyOfRange(args, 1, args.length);
+			} else if(argument != null && argument.matches("adaptive(:[0-9]+(:[0-9]+)?)?")) {
+				// adaptive binarization with optional window radius and percentage
+				String[] parts = argument.split(":");
+				ADAPTIVE_BINARIZATION = true;
+				if(parts.length > 1) ADAPTIVE_RADIUS  = Integer.parseInt(parts[1]);
+				if(parts.length > 2) ADAPTIVE_PERCENT = Integer.parseInt(parts[2]);
+				// shift arguments by one
+				args = Arrays.copyOfRange(args, 1, args.length);
 			}
 		}
 		
+		String cachePath = null;
+		
+		while(args != null && args.length > 0 && args[0] != null && args[0].startsWith("--")) {
+			String option = args[0];
+			if(option.startsWith("--engine=")) {
+				String engine = option.substring("--engine=".length());
+				try {
+					ENGINE = Engine.parse(engine);
+				} catch(IllegalArgumentException ex) {
+					Log.warn("Unknown engine: " + engine + " (available: " + Engine.names() + "), using " + ENGINE.name().toLowerCase(Locale.ENGLISH));
+				}
+				
+				if(ENGINE == Engine.VECTOR && !VectorKernel.isAvailable()) {
+					Log.warn("The Vector API engine is not available, using the bitmap engine");
+					ENGINE = Engine.BITMAP;
+				}
+			} else if(option.equals("--headless")) {
+				HEADLESS = true;
+			} else if(option.equals("--annotate")) {
+				ANNOTATE = true;
+			} else if(option.equals("--text")) {
+				TEXT_OUTPUT = true;
+			} else if(option.equals("--filter")) {
+				FILTER_MINUTIAE = true;
+			} else if(option.equals("--graph")) {
+				GRAPH_EXTRACTION = true;
+			} else if(option.startsWith("--verify=")) {
+				String templatePath = option.substring("--verify=".length());
+				try {
+					VERIFY_TEMPLATE = new TemplateReader(new File(templatePath)).next();
+				} catch(Exception ex) {
+					Log.error("Failed to read template to verify against: " + templatePath, ex);
+				}
+			} else if(option.startsWith("--identify=")) {
+				String galleryPath = option.substring("--identify=".length());
+				try {
+					GALLERY = new Gallery();
+					GALLERY.load(new File(galleryPath));
+					Log.info("Loaded " + GALLERY.size() + " template(s) from " + galleryPath);
+				} catch(Exception ex) {
+					Log.error("Failed to load the gallery: " + galleryPath, ex);
+					GALLERY = null;
+				}
+			} else if(option.startsWith("--candidates=")) {
+				long candidates = parsePositive("--candidates", option.substring("--candidates=".length()), Integer.MAX_VALUE);
+				if(candidates > 0) IDENTIFY_CANDIDATES = (int) candidates;
+			} else if(option.equals("--metrics")) {
+				Metrics.enable();
+			} else if(option.startsWith("--sweep=")) {
+				SWEEP_THRESHOLDS = Sweep.parse(option.substring("--sweep=".length()));
+			} else if(option.startsWith("--cache=")) {
+				cachePath = option.substring("--cache=".length());
+			} else if(option.startsWith("--cache-size=")) {
+				// the limit is kept in bytes
+				long size = parsePositive("--cache-size", option.substring("--cache-size=".length()), Long.MAX_VALUE >> 20);
+				if(size > 0) CACHE_SIZE = size;
+			} else if(option.startsWith("--log-level=")) {
+				String level = option.substring("--log-level=".length());
+				try {
+					Log.setLevel(Log.Level.parse(level));
+				} catch(IllegalArgumentException ex) {
+					Log.warn("Unknown log level: " + level + " (available: " + Log.Level.names() + ")");
+				}
+			} else {
+				Log.warn("Unknown option: " + option);
+			}
+			// shift arguments by one
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+		
+		if(cachePath != null) {
+			try {
+				CACHE = new ResultCache(new File(cachePath), CACHE_SIZE * 1024 * 1024);
+			} catch(Exception ex) {
+				Log.error("Failed to open the result cache: " + cachePath, ex);
+			}
+		}
+		
+		if(SWEEP_THRESHOLDS != null) {
+			// the results of the thresholds are only written
+			HEADLESS = true;
+		}
+		
+		if(HEADLESS) {
+			// has to be set before anything touches the AWT toolkit
+			System.setProperty("java.awt.headless", "true");
+		}
+		
 		String[] paths = args != null && args.length > 0 ? args : new String[0];
 		
 		if(paths.length == 0) {
@@ -277,6 +702,19 @@ public class FingerPrintAnalyzer {
 			paths = new String[] { "sample/fingerprint.png", "sample/fingerprint2.jpg" };
 		}
 		
+		if(SWEEP_THRESHOLDS != null) {
+			new Sweep(SWEEP_THRESHOLDS).execute(paths);
+			Metrics.write();
+			return;
+		}
+		
+		if(HEADLESS) {
+			// directories and file lists from the standard input are streamed through the stages
+			new Pipeline(BINARIZATION_THRESHOLD).execute(paths);
+			if(CACHE != null) CACHE.report();
+			return;
+		}
+		
 		int processors = Runtime.getRuntime().availableProcessors();
 		ExecutorService executor = Executors.newFixedThreadPool(processors);
 		
@@ -284,21 +722,41 @@ public class FingerPrintAnalyzer {
 			executor.execute(new Runnable() {
 				/* @see java.lang.Runnable#run() */
 				@Override public void run() {
-					String name = path;
-					if(name.contains("/")) name = name.substring(name.lastIndexOf('/') + 1);
-					if(name.contains(".")) name = name.substring(0, name.lastIndexOf('.'));
+					FingerPrintAnalyzer analyzer = new FingerPrintAnalyzer(path);
 					
-					Log.init(name);
+					Log.init(analyzer.getName());
 					
-					FingerPrintAnalyzer analyzer = new FingerPrintAnalyzer(path);
 					analyzer.execute(BINARIZATION_THRESHOLD);
-					analyzer.produceOutput(name);
+					analyzer.produceOutput(analyzer.getName());
 					analyzer.presentResults();
 				}
 			});
 		}
 		
 		executor.shutdown();
+		
+		if(Metrics.isEnabled() || CACHE != null) {
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				Metrics.write();
+				if(CACHE != null) CACHE.report();
+			} catch(InterruptedException ex) {
+				Log.error("Interrupted while processing images", ex);
+			}
+		}
+	}
+	
+	/** Parses the value of a numeric option, returns -1 (after a warning) if it is not a number in <code>[1, maximum]</code>. */
+	private static long parsePositive(String option, String value, long maximum) {
+		try {
+			long number = Long.parseLong(value.trim());
+			if(number >= 1 && number <= maximum) return number;
+		} catch(NumberFormatException ex) {
+			// warned below
+		}
+		
+		Log.warn("Invalid value for " + option + ": " + value + " (expected a whole number between 1 and " + maximum + "), using the default");
+		return -1;
 	}
 		
 }
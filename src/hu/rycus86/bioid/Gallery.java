@@ -0,0 +1,292 @@
+package hu.rycus86.bioid;
+
+import hu.rycus86.bioid.util.Log;
+import hu.rycus86.bioid.util.NormalizedMinutiae;
+import hu.rycus86.bioid.util.Template;
+import hu.rycus86.bioid.util.TemplateReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preloaded gallery of templates for 1:N identification.
+ * 
+ * The normalized minutiae of all templates are stored in shared primitive arrays
+ * (endings first for each template, see {@link Matcher#match(float[], float[], int, int, int, float[], float[], int, int, int)}).
+ * A search splits the gallery into ranges compared in parallel, each keeping the best candidates in a bounded heap.
+ * Templates that can not reach the lowest score kept so far by any range (judging by their counts) are not compared.
+ * 
+ * @author viktor.adam
+ */
+public class Gallery {
+	
+	/** The maximum number of templates compared by a single parallel task. */
+	private static final int MAX_RANGE_SIZE = 256;
+	
+	/** The pool executing the parallel searches (the common pool shared with the parallel thinning). */
+	private static final ForkJoinPool pool = ForkJoinPool.commonPool();
+	
+	/** Orders candidates from the worst to the best. */
+	private static final Comparator<Candidate> worstFirst = new Comparator<Candidate>() {
+		/* @see java.util.Comparator#compare(java.lang.Object, java.lang.Object) */
+		@Override public int compare(Candidate c1, Candidate c2) {
+			int result = Double.compare(c1.score, c2.score);
+			return result != 0 ? result : Integer.compare(c2.index, c1.index);
+		}
+	};
+	
+	/** The source paths of the templates. */
+	private String[] sources = new String[0];
+	/** The index of the first minutia of each template (and the end of the last one). */
+	private int[] offsets = new int[] { 0 };
+	/** The number of endings of each template. */
+	private int[] endings = new int[0];
+	/** The number of templates. */
+	private int size;
+	
+	/** The normalized X coordinates of the minutiae. */
+	private float[] xs = new float[0];
+	/** The normalized Y coordinates of the minutiae. */
+	private float[] ys = new float[0];
+	
+	/** Loads all templates of the given file into the gallery. */
+	public void load(File file) throws IOException {
+		TemplateReader reader = new TemplateReader(file);
+		
+		ensureTemplates(size + reader.count());
+		
+		while(reader.hasNext()) {
+			add(reader.next());
+		}
+	}
+	
+	/** Adds a single template to the gallery. */
+	public void add(Template template) {
+		NormalizedMinutiae normalized = new NormalizedMinutiae(template.getMinutiae());
+		
+		// degenerate templates are kept without minutiae, they never match
+		int count = normalized.isDegenerate() ? 0 : normalized.getCount();
+		
+		ensureTemplates(size + 1);
+		ensureMinutiae(offsets[size] + count);
+		
+		int offset = offsets[size];
+		for(int idx = 0; idx < count; idx++) {
+			xs[offset + idx] = normalized.getFloatX()[idx];
+			ys[offset + idx] = normalized.getFloatY()[idx];
+		}
+		
+		sources[size] 	  = template.getSource();
+		endings[size] 	  = count > 0 ? normalized.getEndingCount() : 0;
+		offsets[size + 1] = offset + count;
+		size++;
+	}
+	
+	/** Returns the number of templates in the gallery. */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Searches the gallery for the templates most similar to the probe.
+	 * @param probe The normalized minutiae of the probe
+	 * @param limit The maximum number of candidates to return
+	 * @return The best candidates ordered by decreasing score
+	 */
+	public List<Candidate> identify(NormalizedMinutiae probe, int limit) {
+		if(probe.isDegenerate() || limit <= 0) return new ArrayList<>();
+		
+		long start = System.nanoTime();
+		
+		Search search = new Search(
+				probe.getFloatX(), probe.getFloatY(), probe.getEndingCount(), probe.getCount(),
+				limit, new AtomicLong(Double.doubleToLongBits(0.0)), new long[1], 0, size);
+		
+		List<Candidate> candidates = new ArrayList<>(pool.invoke(search));
+		Collections.sort(candidates, Collections.reverseOrder(worstFirst));
+		
+		long elapsed = Math.max(System.nanoTime() - start, 1L);
+		long compared = search.compared[0];
+		
+		Log.info(() -> "Searched " + size + " template(s) in " + (elapsed / 1000000) + " ms, compared " + compared
+				+ " (" + Math.round(size * 1e9 / elapsed) + " templates/s, "
+				+ Math.round(compared * 1e9 / elapsed) + " comparisons/s)");
+		
+		return candidates;
+	}
+	
+	/** Makes room for the given number of templates. */
+	private void ensureTemplates(int count) {
+		if(sources.length >= count) return;
+		
+		int capacity = Math.max(count, sources.length * 2);
+		sources = Arrays.copyOf(sources, capacity);
+		endings = Arrays.copyOf(endings, capacity);
+		offsets = Arrays.copyOf(offsets, capacity + 1);
+	}
+	
+	/** Makes room for the given number of minutiae. */
+	private void ensureMinutiae(int count) {
+		if(xs.length >= count) return;
+		
+		int capacity = Math.max(count, xs.length * 2);
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+	}
+	
+	/**
+	 * A template of the gallery found by a search.
+	 *
+	 * @author viktor.adam
+	 */
+	public static class Candidate {
+		
+		/** The index of the template in the gallery. */
+		private final int index;
+		/** The source path of the template. */
+		private final String source;
+		/** The similarity score. */
+		private final double score;
+		
+		/** Constructor. */
+		Candidate(int index, String source, double score) {
+			this.index  = index;
+			this.source = source;
+			this.score  = score;
+		}
+		
+		/** Returns the index of the template in the gallery. */
+		public int getIndex() { return index; }
+		/** Returns the source path of the template. */
+		public String getSource() { return source; }
+		/** Returns the similarity score. */
+		public double getScore() { return score; }
+		
+		/* @see java.lang.Object#toString() */
+		@Override public String toString() {
+			return source + " (" + String.format("%.4f", score) + ")";
+		}
+		
+	}
+	
+	/** Task comparing a range of templates to the probe, splitting it in halves while it is too large. */
+	private class Search extends RecursiveTask<PriorityQueue<Candidate>> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** The normalized coordinates of the probe. */
+		private final float[] px, py;
+		/** The number of endings and all minutiae of the probe. */
+		private final int pEndings, pCount;
+		/** The maximum number of candidates kept. */
+		private final int limit;
+		/** The highest lowest score of the full heaps of all ranges (as double bits). */
+		private final AtomicLong floor;
+		/** The number of templates actually compared (written by the root task only). */
+		private final long[] compared;
+		/** The first template of the range (inclusive). */
+		private final int from;
+		/** The last template of the range (exclusive). */
+		private final int to;
+		
+		/** The number of templates compared in this range. */
+		private long count;
+		
+		/** Constructor. */
+		Search(float[] px, float[] py, int pEndings, int pCount, int limit, AtomicLong floor, long[] compared, int from, int to) {
+			this.px 	  = px;
+			this.py 	  = py;
+			this.pEndings = pEndings;
+			this.pCount   = pCount;
+			this.limit 	  = limit;
+			this.floor 	  = floor;
+			this.compared = compared;
+			this.from 	  = from;
+			this.to 	  = to;
+		}
+		
+		/* @see java.util.concurrent.RecursiveTask#compute() */
+		@Override protected PriorityQueue<Candidate> compute() {
+			PriorityQueue<Candidate> heap;
+			
+			if(to - from <= MAX_RANGE_SIZE) {
+				heap = scan();
+			} else {
+				int middle = (from + to) >>> 1;
+				
+				Search first  = new Search(px, py, pEndings, pCount, limit, floor, compared, from, middle);
+				Search second = new Search(px, py, pEndings, pCount, limit, floor, compared, middle, to);
+				
+				first.fork();
+				heap = second.compute();
+				
+				PriorityQueue<Candidate> other = first.join();
+				for(Candidate candidate : other) {
+					offer(heap, candidate);
+				}
+				
+				count = first.count + second.count;
+			}
+			
+			if(from == 0 && to == size) {
+				compared[0] = count;
+			}
+			
+			return heap;
+		}
+		
+		/** Compares the templates of the range to the probe. */
+		private PriorityQueue<Candidate> scan() {
+			PriorityQueue<Candidate> heap = new PriorityQueue<>(limit + 1, worstFirst);
+			
+			Matcher matcher = Matcher.get();
+			
+			for(int index = from; index < to; index++) {
+				int offset = offsets[index];
+				int cCount = offsets[index + 1] - offset;
+				
+				double bound = Matcher.upperBound(pEndings, pCount, endings[index], cCount);
+				if(bound == 0.0 || bound < Double.longBitsToDouble(floor.get())) continue;
+				if(heap.size() >= limit && bound <= heap.peek().score) continue;
+				
+				double score = matcher.match(px, py, 0, pEndings, pCount, xs, ys, offset, endings[index], cCount);
+				count++;
+				
+				offer(heap, new Candidate(index, sources[index], score));
+			}
+			
+			return heap;
+		}
+		
+		/** Adds the candidate to the heap if it is among the best ones and raises the floor if the heap is full. */
+		private void offer(PriorityQueue<Candidate> heap, Candidate candidate) {
+			if(heap.size() < limit) {
+				heap.add(candidate);
+			} else if(worstFirst.compare(candidate, heap.peek()) > 0) {
+				heap.poll();
+				heap.add(candidate);
+			} else {
+				return;
+			}
+			
+			if(heap.size() < limit) return;
+			
+			double lowest = heap.peek().score;
+			long current;
+			while(lowest > Double.longBitsToDouble(current = floor.get())) {
+				if(floor.compareAndSet(current, Double.doubleToLongBits(lowest))) break;
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,185 @@
+package hu.rycus86.bioid;
+
+import hu.rycus86.bioid.util.BinaryImage;
+import hu.rycus86.bioid.util.ByteFlag;
+
+import java.util.Arrays;
+
+/**
+ * Helper class for executing the Thinning algorithm incrementally on a bit-packed image.
+ * 
+ * A sub-pass can only change a pixel if its 3x3 window changed since the same sub-pass
+ * was applied the last time, so after the first execution only the words
+ * (64 pixel wide tiles) next to the changes of the last 8 sub-passes are evaluated again.
+ * The results are identical to {@link Thinning#execute(BinaryImage, ByteFlag)}.
+ * 
+ * @author viktor.adam
+ */
+public class IncrementalThinning {
+	
+	/** The number of sub-passes in a single execution. */
+	private static final int SUB_PASSES = 8;
+	
+	/** The image being thinned (modified in place). */
+	private BinaryImage image;
+	
+	/** The masks of the sub-passes in their order of application. */
+	private final int[][] masks = Thinning.subPassMasks();
+	
+	/** The bits holding pixels of the image for each word index. */
+	private long[] valid;
+	/** The bits inside the processed range for each word index. */
+	private long[] range;
+	
+	/** The sub-pass of the latest change next to each word. */
+	private int[] lastChange;
+	
+	/** The words that need to be evaluated (possibly containing expired ones). */
+	private int[] active;
+	/** The number of entries in the active list. */
+	private int activeCount;
+	
+	/** The words changed by the current sub-pass. */
+	private int[] pendingIndex;
+	/** The new values of the words changed by the current sub-pass. */
+	private long[] pendingValue;
+	
+	/** The number of sub-passes applied so far. */
+	private int pass;
+	/** The number of pixels removed so far. */
+	private int removed;
+	
+	/** Constructor. */
+	public IncrementalThinning(BinaryImage image) {
+		reset(image);
+	}
+	
+	/** Starts over with the given image reusing the buffers if it has the same size as the previous one. */
+	public void reset(BinaryImage image) {
+		boolean sameSize = this.image != null
+				&& this.image.getWidth()  == image.getWidth()
+				&& this.image.getHeight() == image.getHeight();
+		
+		this.image = image;
+		
+		int stride = image.getStride();
+		int words  = stride * image.getHeight();
+		
+		if(!sameSize) {
+			valid = new long[stride];
+			range = new long[stride];
+			for(int index = 0; index < stride; index++) {
+				valid[index] = BinaryImage.columnMask(index, 0, image.getWidth() - 1);
+				range[index] = BinaryImage.columnMask(index, 1, image.getWidth() - 3);
+			}
+			
+			lastChange 	 = new int[words];
+			active 		 = new int[words];
+			pendingIndex = new int[words];
+			pendingValue = new long[words];
+		}
+		
+		// every word has to be evaluated by the first execution
+		Arrays.fill(lastChange, -1);
+		
+		for(int word = 0; word < words; word++) {
+			active[word] = word;
+		}
+		activeCount = words;
+		
+		pass 	= 0;
+		removed = 0;
+	}
+	
+	/**
+	 * Executes the operation once (all 8 sub-passes).
+	 * @param changed Flag to signal if execution changed the image
+	 * @return The thinned image (modified in place)
+	 */
+	public BinaryImage execute(ByteFlag changed) {
+		changed.set(false);
+		
+		for(int sub = 0; sub < SUB_PASSES; sub++) {
+			changed.or( applyNext() );
+		}
+		
+		return image;
+	}
+	
+	/** Returns the number of pixels removed from the image since the last reset. */
+	public int getRemoved() {
+		return removed;
+	}
+	
+	/** Applies the next sub-pass on the active words and returns true if any pixel was removed. */
+	private boolean applyNext() {
+		int current = pass++;
+		int[] kernel = masks[current % SUB_PASSES];
+		
+		int stride   = image.getStride();
+		int height   = image.getHeight();
+		long[] words = image.getWords();
+		
+		// drop the words without changes around them since this sub-pass was last applied
+		int count = 0;
+		for(int idx = 0; idx < activeCount; idx++) {
+			int word = active[idx];
+			if(lastChange[word] >= current - SUB_PASSES) {
+				active[count++] = word;
+			}
+		}
+		activeCount = count;
+		
+		// evaluate every active word before writing any of them back
+		int pending = 0;
+		for(int idx = 0; idx < activeCount; idx++) {
+			int word  = active[idx];
+			int y 	  = word / stride;
+			int index = word - y * stride;
+			
+			boolean inner = y >= 1 && y < height - 2;
+			long result = Thinning.applyWord(image, y, index, valid[index], inner ? range[index] : 0L, kernel);
+			
+			if(result != words[word]) {
+				pendingIndex[pending] = word;
+				pendingValue[pending] = result;
+				pending++;
+			}
+		}
+		
+		int pixels = 0;
+		for(int idx = 0; idx < pending; idx++) {
+			int word = pendingIndex[idx];
+			
+			pixels += Long.bitCount(words[word] & ~pendingValue[idx]);
+			words[word] = pendingValue[idx];
+			
+			touch(word, current);
+		}
+		
+		removed += pixels;
+		return pixels > 0;
+	}
+	
+	/** Marks the given word and the words around it as changed in the given sub-pass. */
+	private void touch(int word, int current) {
+		int stride = image.getStride();
+		int height = image.getHeight();
+		
+		int y 	  = word / stride;
+		int index = word - y * stride;
+		
+		for(int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, height - 1); ny++) {
+			for(int nx = Math.max(index - 1, 0); nx <= Math.min(index + 1, stride - 1); nx++) {
+				int neighbour = ny * stride + nx;
+				
+				// expired words have already been dropped from the active list
+				if(lastChange[neighbour] < current - SUB_PASSES) {
+					active[activeCount++] = neighbour;
+				}
+				lastChange[neighbour] = current;
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,216 @@
+package hu.rycus86.bioid;
+
+import hu.rycus86.bioid.util.Minutiae;
+import hu.rycus86.bioid.util.NormalizedMinutiae;
+
+import java.util.Arrays;
+
+/**
+ * Helper class for comparing the minutiae of two fingerprints.
+ * 
+ * The minutiae are compared by their normalized coordinates (see {@link NormalizedMinutiae}),
+ * which already cancel out the position and the scale of the fingerprints on the images.
+ * The remaining misalignment is found by a translation vote: every pair of minutiae of the same type
+ * votes for the offset between them in a table of tolerance-sized bins,
+ * then the minutiae are paired one-to-one under the offset of the most voted bin
+ * looking up the candidates in a grid of the same cell size.
+ * 
+ * Each thread has its own instance (see {@link #get()}) holding the tables,
+ * so comparing normalized minutiae (which keep their single precision coordinates) does not allocate.
+ * 
+ * @author viktor.adam
+ */
+public class Matcher {
+	
+	/** The default distance (in normalized units) under which two minutiae are paired. */
+	public static final double DEFAULT_TOLERANCE = 0.02;
+	
+	/** The matcher of the current thread. */
+	private static final ThreadLocal<Matcher> matcher = new ThreadLocal<Matcher>() {
+		/* @see java.lang.ThreadLocal#initialValue() */
+		@Override protected Matcher initialValue() { return new Matcher(DEFAULT_TOLERANCE); }
+	};
+	
+	/** The distance (in normalized units) under which two minutiae are paired. */
+	private final double tolerance;
+	
+	/** The number of offset bins on each axis (offsets are in [-1, 1]). */
+	private final int voteSize;
+	/** The vote counts of the offset bins. */
+	private final int[] votes;
+	
+	/** The number of grid cells on each axis (coordinates are in [0, 1]). */
+	private final int gridSize;
+	/** The first candidate minutia in each grid cell (or -1). */
+	private final int[] heads;
+	/** The next candidate minutia in the same grid cell (or -1). */
+	private int[] next = new int[0];
+	/** The probe index + 1 paired with each candidate minutia during the current comparison. */
+	private int[] paired = new int[0];
+	
+	/** Returns the matcher of the current thread (using the default tolerance). */
+	public static Matcher get() {
+		return matcher.get();
+	}
+	
+	/** Constructor. */
+	public Matcher(double tolerance) {
+		this.tolerance = tolerance;
+		
+		this.voteSize = (int) Math.ceil(2.0 / tolerance) + 1;
+		this.votes 	  = new int[voteSize * voteSize];
+		
+		this.gridSize = (int) Math.ceil(1.0 / tolerance) + 1;
+		this.heads 	  = new int[gridSize * gridSize];
+	}
+	
+	/**
+	 * Compares the minutiae of two fingerprints.
+	 * @return The similarity score in [0, 1] (the square of the paired minutiae over the product of the counts)
+	 */
+	public static double match(Minutiae probe, Minutiae candidate) {
+		return get().match(new NormalizedMinutiae(probe), new NormalizedMinutiae(candidate));
+	}
+	
+	/**
+	 * Compares the normalized minutiae of two fingerprints.
+	 * @return The similarity score in [0, 1] (the square of the paired minutiae over the product of the counts)
+	 */
+	public double match(NormalizedMinutiae probe, NormalizedMinutiae candidate) {
+		if(probe.isDegenerate() || candidate.isDegenerate()) return 0.0;
+		
+		return match(probe.getFloatX(), probe.getFloatY(), 0, probe.getEndingCount(), probe.getCount(),
+				candidate.getFloatX(), candidate.getFloatY(), 0, candidate.getEndingCount(), candidate.getCount());
+	}
+	
+	/**
+	 * Compares normalized minutiae stored in (shared) arrays.
+	 * The minutiae of a fingerprint start at the given offset of its arrays with the endings first.
+	 * @param px The X coordinates of the probe
+	 * @param py The Y coordinates of the probe
+	 * @param pOffset The index of the first minutia of the probe
+	 * @param pEndings The number of endings of the probe
+	 * @param pCount The number of minutiae of the probe
+	 * @param cx The X coordinates of the candidate
+	 * @param cy The Y coordinates of the candidate
+	 * @param cOffset The index of the first minutia of the candidate
+	 * @param cEndings The number of endings of the candidate
+	 * @param cCount The number of minutiae of the candidate
+	 * @return The similarity score in [0, 1] (the square of the paired minutiae over the product of the counts)
+	 */
+	public double match(float[] px, float[] py, int pOffset, int pEndings, int pCount,
+			float[] cx, float[] cy, int cOffset, int cEndings, int cCount) {
+		if(pCount == 0 || cCount == 0) return 0.0;
+		
+		int count = pair(px, py, pOffset, pEndings, pCount, cx, cy, cOffset, cEndings, cCount);
+		
+		return (double) count * count / ((double) pCount * cCount);
+	}
+	
+	/**
+	 * Returns the highest score two fingerprints with the given counts can reach
+	 * (only minutiae of the same type are paired).
+	 */
+	public static double upperBound(int pEndings, int pCount, int cEndings, int cCount) {
+		if(pCount == 0 || cCount == 0) return 0.0;
+		
+		int pairs = Math.min(pEndings, cEndings) + Math.min(pCount - pEndings, cCount - cEndings);
+		return (double) pairs * pairs / ((double) pCount * cCount);
+	}
+	
+	/** Returns the number of minutiae paired under the most voted offset. */
+	private int pair(float[] px, float[] py, int pOffset, int pEndings, int pCount,
+			float[] cx, float[] cy, int cOffset, int cEndings, int cCount) {
+		Arrays.fill(votes, 0);
+		
+		int best 	  = 0;
+		int bestVotes = 0;
+		
+		for(int i = 0; i < pCount; i++) {
+			boolean ending = i < pEndings;
+			
+			int from = ending ? 0 : cEndings;
+			int to 	 = ending ? cEndings : cCount;
+			
+			for(int j = from; j < to; j++) {
+				int bx = (int) ((cx[cOffset + j] - px[pOffset + i] + 1.0) / tolerance + 0.5);
+				int by = (int) ((cy[cOffset + j] - py[pOffset + i] + 1.0) / tolerance + 0.5);
+				
+				int bin = by * voteSize + bx;
+				if(++votes[bin] > bestVotes) {
+					bestVotes = votes[bin];
+					best 	  = bin;
+				}
+			}
+		}
+		
+		if(bestVotes == 0) return 0;
+		
+		double dx = (best % voteSize) * tolerance - 1.0;
+		double dy = (best / voteSize) * tolerance - 1.0;
+		
+		index(cx, cy, cOffset, cCount);
+		
+		double limit = tolerance * tolerance;
+		
+		int count = 0;
+		
+		for(int i = 0; i < pCount; i++) {
+			boolean ending = i < pEndings;
+			
+			double x = px[pOffset + i] + dx;
+			double y = py[pOffset + i] + dy;
+			
+			int gx = (int) Math.floor(x / tolerance);
+			int gy = (int) Math.floor(y / tolerance);
+			
+			int nearest = -1;
+			double nearestDistance = limit;
+			
+			for(int cy0 = Math.max(gy - 1, 0); cy0 <= Math.min(gy + 1, gridSize - 1); cy0++) {
+				for(int cx0 = Math.max(gx - 1, 0); cx0 <= Math.min(gx + 1, gridSize - 1); cx0++) {
+					for(int j = heads[cy0 * gridSize + cx0]; j >= 0; j = next[j]) {
+						if((j < cEndings) != ending || paired[j] != 0) continue;
+						
+						double ex = cx[cOffset + j] - x;
+						double ey = cy[cOffset + j] - y;
+						
+						double distance = ex * ex + ey * ey;
+						if(distance <= nearestDistance) {
+							nearestDistance = distance;
+							nearest = j;
+						}
+					}
+				}
+			}
+			
+			if(nearest >= 0) {
+				paired[nearest] = i + 1;
+				count++;
+			}
+		}
+		
+		return count;
+	}
+	
+	/** Puts the candidate minutiae into the grid. */
+	private void index(float[] cx, float[] cy, int cOffset, int cCount) {
+		if(next.length < cCount) {
+			next   = new int[cCount];
+			paired = new int[cCount];
+		}
+		
+		Arrays.fill(heads, -1);
+		Arrays.fill(paired, 0, cCount, 0);
+		
+		for(int j = cCount - 1; j >= 0; j--) {
+			int gx = Math.min((int) (cx[cOffset + j] / tolerance), gridSize - 1);
+			int gy = Math.min((int) (cy[cOffset + j] / tolerance), gridSize - 1);
+			
+			int cell = gy * gridSize + gx;
+			next[j] 	= heads[cell];
+			heads[cell] = j;
+		}
+	}
+	
+}
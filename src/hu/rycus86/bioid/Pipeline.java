@@ -0,0 +1,272 @@
+package hu.rycus86.bioid;
+
+import hu.rycus86.bioid.util.Log;
+import hu.rycus86.bioid.util.Metrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Staged pipeline for analyzing large batches of fingerprint images without a user interface.
+ * 
+ * The images are passed through the decode, binarize/thin, extract and serialize stages
+ * connected by bounded queues, so a slow stage blocks the ones before it
+ * and the number of images held in memory does not depend on the size of the batch.
+ * 
+ * The sources can be image files, directories (their image files are processed)
+ * or <code>-</code> for a list of image paths read from the standard input.
+ * 
+ * @author viktor.adam
+ */
+public class Pipeline {
+	
+	/** The source name for reading image paths from the standard input. */
+	private static final String STANDARD_INPUT = "-";
+	
+	/** Marks the end of the input for the stages. */
+	private static final FingerPrintAnalyzer POISON = new FingerPrintAnalyzer("");
+	
+	/** The threshold used for binarization. */
+	private final int binarizeThreshold;
+	
+	/** The number of workers for the computing stages. */
+	private final int workers;
+	/** The capacity of the queues between the stages. */
+	private final int capacity;
+	
+	/** The number of images written. */
+	private final AtomicInteger processed = new AtomicInteger();
+	
+	/** Constructor. */
+	public Pipeline(int binarizeThreshold) {
+		this.binarizeThreshold = binarizeThreshold;
+		this.workers  = Runtime.getRuntime().availableProcessors();
+		this.capacity = workers * 2;
+	}
+	
+	/** Processes all images of the given sources and waits for the results to be written. */
+	public void execute(String[] sources) {
+		BlockingQueue<FingerPrintAnalyzer> decodeQueue 	  = new ArrayBlockingQueue<>(capacity);
+		BlockingQueue<FingerPrintAnalyzer> thinQueue 	  = new ArrayBlockingQueue<>(capacity);
+		BlockingQueue<FingerPrintAnalyzer> extractQueue   = new ArrayBlockingQueue<>(capacity);
+		BlockingQueue<FingerPrintAnalyzer> serializeQueue = new ArrayBlockingQueue<>(capacity);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(workers * 3 + 1);
+		
+		start(executor, workers, decodeQueue, thinQueue, new Step() {
+			/* @see hu.rycus86.bioid.Pipeline.Step#process(hu.rycus86.bioid.FingerPrintAnalyzer) */
+			@Override public boolean process(FingerPrintAnalyzer analyzer) {
+				return analyzer.decode();
+			}
+		});
+		
+		start(executor, workers, thinQueue, extractQueue, new Step() {
+			/* @see hu.rycus86.bioid.Pipeline.Step#process(hu.rycus86.bioid.FingerPrintAnalyzer) */
+			@Override public boolean process(FingerPrintAnalyzer analyzer) {
+				analyzer.thin(binarizeThreshold);
+				// the thinned image is owned by the context of this thread
+				analyzer.detach();
+				return true;
+			}
+		});
+		
+		start(executor, workers, extractQueue, serializeQueue, new Step() {
+			/* @see hu.rycus86.bioid.Pipeline.Step#process(hu.rycus86.bioid.FingerPrintAnalyzer) */
+			@Override public boolean process(FingerPrintAnalyzer analyzer) {
+				analyzer.extract();
+				return true;
+			}
+		});
+		
+		start(executor, 1, serializeQueue, null, new Step() {
+			/* @see hu.rycus86.bioid.Pipeline.Step#process(hu.rycus86.bioid.FingerPrintAnalyzer) */
+			@Override public boolean process(FingerPrintAnalyzer analyzer) {
+				analyzer.produceOutput(analyzer.getName());
+				processed.incrementAndGet();
+				return true;
+			}
+		});
+		
+		executor.shutdown();
+		
+		Log.init("pipeline");
+		
+		try {
+			for(String source : sources) {
+				expand(source, new Sink() {
+					/* @see hu.rycus86.bioid.Pipeline.Sink#accept(java.lang.String) */
+					@Override public void accept(String path) throws InterruptedException {
+						// blocks while the first stage is full
+						decodeQueue.put(new FingerPrintAnalyzer(path));
+					}
+				});
+			}
+			
+			decodeQueue.put(POISON);
+			
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException ex) {
+			Log.error("Interrupted while processing images", ex);
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		
+		Log.info("Processed " + processed.get() + " image(s)");
+		
+		Metrics.write();
+	}
+	
+	/**
+	 * Passes the image paths of the given source to the sink:
+	 * the source itself, the image files of a directory or the paths read from the standard input for <code>-</code>.
+	 */
+	static void expand(String source, Sink sink) throws InterruptedException {
+		if(STANDARD_INPUT.equals(source)) {
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+				
+				String line;
+				while((line = reader.readLine()) != null) {
+					line = line.trim();
+					if(!line.isEmpty()) {
+						sink.accept(line);
+					}
+				}
+			} catch(IOException ex) {
+				Log.error("Failed to read image paths from the standard input", ex);
+			}
+		} else if(new File(source).isDirectory()) {
+			Set<String> suffixes = new HashSet<>(Arrays.asList(ImageIO.getReaderFileSuffixes()));
+			
+			try ( DirectoryStream<Path> directory = Files.newDirectoryStream(Paths.get(source)) ) {
+				for(Path file : directory) {
+					String filename = file.getFileName().toString();
+					if(!filename.contains(".")) continue;
+					
+					String suffix = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase(Locale.ENGLISH);
+					if(suffixes.contains(suffix) && Files.isRegularFile(file)) {
+						sink.accept(file.toString());
+					}
+				}
+			} catch(IOException ex) {
+				Log.error("Failed to list directory: " + source, ex);
+			}
+		} else {
+			sink.accept(source);
+		}
+	}
+	
+	/** Starts the given number of workers executing a step on the images of the input queue. */
+	private void start(ExecutorService executor, int count,
+			BlockingQueue<FingerPrintAnalyzer> input, BlockingQueue<FingerPrintAnalyzer> output, Step step) {
+		AtomicInteger running = new AtomicInteger(count);
+		for(int idx = 0; idx < count; idx++) {
+			executor.execute(new Worker(input, output, step, running));
+		}
+	}
+	
+	/** Receives the image paths of a source (see {@link Pipeline#expand(String, Sink)}). */
+	interface Sink {
+		
+		/** Accepts the path of an image. */
+		void accept(String path) throws InterruptedException;
+		
+	}
+	
+	/** A single step of the pipeline executed on an image. */
+	private interface Step {
+		
+		/** Executes the step, returns false if the image should not be passed to the next stage. */
+		boolean process(FingerPrintAnalyzer analyzer);
+		
+	}
+	
+	/**
+	 * Worker of a stage taking images from the input queue until the end of the input.
+	 * The last worker of a stage to finish passes the end of the input to the next stage
+	 * (even if it is stopped by a failure, so the later stages do not wait forever).
+	 */
+	private static class Worker implements Runnable {
+		
+		/** The queue of images to process. */
+		private final BlockingQueue<FingerPrintAnalyzer> input;
+		/** The queue of the next stage (or null for the last stage). */
+		private final BlockingQueue<FingerPrintAnalyzer> output;
+		/** The step to execute. */
+		private final Step step;
+		/** The number of running workers of the stage. */
+		private final AtomicInteger running;
+		
+		/** Constructor. */
+		Worker(BlockingQueue<FingerPrintAnalyzer> input, BlockingQueue<FingerPrintAnalyzer> output, Step step, AtomicInteger running) {
+			this.input 	 = input;
+			this.output  = output;
+			this.step 	 = step;
+			this.running = running;
+		}
+		
+		/* @see java.lang.Runnable#run() */
+		@Override public void run() {
+			try {
+				while(true) {
+					FingerPrintAnalyzer analyzer = input.take();
+					
+					if(analyzer == POISON) {
+						// leave it for the other workers of the stage
+						input.put(POISON);
+						break;
+					}
+					
+					Log.init(analyzer.getName());
+					
+					boolean passed = false;
+					try {
+						passed = step.process(analyzer);
+					} catch(RuntimeException | Error ex) {
+						// a single image (e.g. running out of memory on a huge one) does not stop the stage
+						Log.error("Failed to process image", ex);
+					}
+					
+					if(passed && output != null) {
+						output.put(analyzer);
+					}
+				}
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} finally {
+				finish();
+			}
+		}
+		
+		/** Passes the end of the input to the next stage if this is the last running worker of the stage. */
+		private void finish() {
+			if(running.decrementAndGet() != 0 || output == null) return;
+			
+			try {
+				output.put(POISON);
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,179 @@
+package hu.rycus86.bioid;
+
+import hu.rycus86.bioid.util.ImageDecoder;
+import hu.rycus86.bioid.util.Log;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Threshold sweep for tuning the binarization threshold of a sensor.
+ * 
+ * Each image is decoded and its maximum channel plane is computed only once,
+ * then it is binarized, thinned and its minutiae are extracted with each threshold in parallel.
+ * The results of each threshold are written with a <code>-t&lt;threshold&gt;</code> suffix in their names
+ * and the minutiae counts of all thresholds are written to <code>&lt;name&gt;-sweep.csv</code>
+ * (with empty counts for the thresholds the analysis failed with).
+ * The sources are expanded like the ones of the {@link Pipeline} (files, directories or <code>-</code>).
+ * 
+ * @author viktor.adam
+ */
+public class Sweep {
+	
+	/** The thresholds to analyze the images with. */
+	private final int[] thresholds;
+	
+	/** Constructor. */
+	public Sweep(int[] thresholds) {
+		this.thresholds = thresholds;
+	}
+	
+	/**
+	 * Parses a list of thresholds.
+	 * @param value Comma-separated thresholds or ranges (<code>from-to</code> or <code>from-to:step</code>), e.g. <code>60,80-120:10</code>
+	 * @return The thresholds in the given order
+	 * @throws IllegalArgumentException if the list is malformed or a threshold is out of the 0-255 range
+	 */
+	public static int[] parse(String value) {
+		List<Integer> thresholds = new ArrayList<>();
+		
+		for(String part : value.split(",")) {
+			if(!part.matches("[0-9]+(-[0-9]+(:[0-9]+)?)?")) {
+				throw new IllegalArgumentException("Invalid threshold: " + part);
+			}
+			
+			String[] bounds = part.split("[-:]");
+			int from = Integer.parseInt(bounds[0]);
+			int to 	 = bounds.length > 1 ? Integer.parseInt(bounds[1]) : from;
+			int step = bounds.length > 2 ? Integer.parseInt(bounds[2]) : 1;
+			
+			if(to > 0xFF || from > to || step < 1) {
+				throw new IllegalArgumentException("Invalid threshold range: " + part);
+			}
+			
+			for(int threshold = from; threshold <= to; threshold += step) {
+				thresholds.add(threshold);
+			}
+		}
+		
+		int[] result = new int[thresholds.size()];
+		for(int idx = 0; idx < result.length; idx++) {
+			result[idx] = thresholds.get(idx);
+		}
+		return result;
+	}
+	
+	/** Analyzes each image of the given sources with all thresholds. */
+	public void execute(String[] sources) {
+		final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		
+		try {
+			for(String source : sources) {
+				Pipeline.expand(source, new Pipeline.Sink() {
+					/* @see hu.rycus86.bioid.Pipeline.Sink#accept(java.lang.String) */
+					@Override public void accept(String path) {
+						sweep(path, executor);
+					}
+				});
+			}
+		} catch(InterruptedException ex) {
+			Log.error("Interrupted while sweeping thresholds", ex);
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/** Analyzes a single image with all thresholds in parallel. */
+	private void sweep(final String path, ExecutorService executor) {
+		final String name = FingerPrintAnalyzer.outputName(path);
+		
+		Log.init(name);
+		
+		BufferedImage original = null;
+		try {
+			original = ImageDecoder.get().read(new File(path));
+		} catch(Exception ex) {
+			Log.error("Failed to read original image", ex);
+		}
+		
+		if(original == null) return;
+		
+		final int width  = original.getWidth();
+		final int height = original.getHeight();
+		
+		final byte[] plane = new byte[width * height];
+		Binarize.maxChannelPlane(original, plane);
+		
+		List<Future<FingerPrintAnalyzer>> results = new ArrayList<>(thresholds.length);
+		
+		for(final int threshold : thresholds) {
+			results.add(executor.submit(new Callable<FingerPrintAnalyzer>() {
+				/* @see java.util.concurrent.Callable#call() */
+				@Override public FingerPrintAnalyzer call() {
+					FingerPrintAnalyzer analyzer = new FingerPrintAnalyzer(path, name + "-t" + threshold);
+					
+					Log.init(analyzer.getName());
+					
+					analyzer.thin(plane, width, height, threshold);
+					analyzer.extract();
+					analyzer.produceOutput(analyzer.getName());
+					
+					return analyzer;
+				}
+			}));
+		}
+		
+		File outputDirectory = new File("output");
+		outputDirectory.mkdir();
+		
+		File outputFile = new File(outputDirectory, name + "-sweep.csv");
+		
+		try ( BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile)) ) {
+			writer.append("threshold;endings;branches");
+			writer.newLine();
+			
+			for(int idx = 0; idx < thresholds.length; idx++) {
+				String counts;
+				
+				try {
+					FingerPrintAnalyzer analyzer = results.get(idx).get();
+					
+					int endings  = analyzer.getMinutiae().getEndingCount();
+					int branches = analyzer.getMinutiae().getBranchCount();
+					
+					int threshold = thresholds[idx];
+					Log.info(() -> "Threshold " + threshold + ": " + endings + " ending(s), " + branches + " branch(es)");
+					
+					counts = endings + ";" + branches;
+				} catch(ExecutionException ex) {
+					Log.error("Failed to analyze the image with threshold " + thresholds[idx], ex.getCause());
+					
+					counts = ";";
+				}
+				
+				writer.append(thresholds[idx] + ";" + counts);
+				writer.newLine();
+			}
+		} catch(InterruptedException ex) {
+			Log.error("Interrupted while sweeping thresholds", ex);
+			Thread.currentThread().interrupt();
+			return;
+		} catch(Exception ex) {
+			Log.error("Failed to write sweep results to file", ex);
+			return;
+		}
+		
+		Log.info(() -> "Sweep file written: " + outputFile.getPath());
+	}
+	
+}
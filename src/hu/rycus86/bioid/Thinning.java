@@ -1,10 +1,14 @@
 package hu.rycus86.bioid;
 
+import hu.rycus86.bioid.util.BinaryImage;
 import hu.rycus86.bioid.util.ByteFlag;
+import hu.rycus86.bioid.util.Neighbourhood;
 import hu.rycus86.bioid.util.Util;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Helper class for executing a Thinning algorithm.
@@ -33,31 +37,105 @@ public class Thinning {
 		
 		WritableRaster source = binarized.getRaster();
 		WritableRaster target = image.getRaster();
-
-		int[] tmask = thinning_kernel;
-		int[] hmask = hit_and_miss_mask;
 		
-		for(int rotate = 0; rotate < 4; rotate++) {
-			changed.or( apply(source, target, width, height, tmask) );
-			tmask = Util.rotateCounterClockwise(tmask);
-			
-			source.setRect(target);
-			
-			changed.or( apply(source, target, width, height, hmask) );
-			hmask = Util.rotateCounterClockwise(hmask);
+		int[] pixel  = new int[1];
+		int[] window = new int[9];
+		
+		for(boolean[] table : sub_pass_tables) {
+			changed.or( apply(source, target, width, height, table, pixel, window) > 0 );
 			
 			source.setRect(target);
 		}
 		
 		return image;
 	}
+	
+	/**
+	 * Executes the operation on the image loaded into the given context
+	 * swapping its planes between the sub-passes instead of copying them.
+	 * @param context A context holding a binarized image (modified in place)
+	 * @param changed Flag to signal if execution changed the image
+	 */
+	public static void execute(ThinningContext context, ByteFlag changed) {
+		changed.set(false);
+		
+		for(int pass = 0; pass < sub_pass_masks.length; pass++) {
+			int removed;
+			if(context.isBitmap()) {
+				removed = apply(context.bitSource(), context.bitTarget(), context.valid(), context.range(), sub_pass_masks[pass]);
+				context.swapBitmap();
+			} else {
+				removed = apply(context.source(), context.target(), context.width(), context.height(), sub_pass_tables[pass], context.pixel, context.window);
+				context.swap();
+			}
+			
+			context.removed(removed);
+			changed.or(removed > 0);
+		}
+	}
 
-	/** Applies the given kernel on the source image data and modifies the target image data. */
-	private static boolean apply(WritableRaster source, WritableRaster target, int width, int height, int[] kernel) {
-		boolean changed = false;
+	/**
+	 * Executes the operation on the bit-packed image loaded into the given context
+	 * splitting each sub-pass into horizontal bands processed in parallel.
+	 * The bands only write their own rows of the target plane and read the rows
+	 * next to them (the one-row halos) from the unmodified source plane,
+	 * all bands finish before the planes are swapped for the next sub-pass.
+	 * Images held by the raster planes are processed sequentially.
+	 * @param context A context holding a binarized image (modified in place)
+	 * @param changed Flag to signal if execution changed the image
+	 */
+	public static void executeParallel(ThinningContext context, ByteFlag changed) {
+		if(!context.isBitmap()) {
+			execute(context, changed);
+			return;
+		}
 		
-		int[] pixel  = new int[1];
-		int[] window = new int[9];
+		changed.set(false);
+		
+		int height = context.height();
+		int rows   = Math.max(MIN_BAND_HEIGHT, height / (4 * pool.getParallelism()));
+		
+		for(int[] kernel : sub_pass_masks) {
+			Band band = new Band(context.bitSource(), context.bitTarget(), context.valid(), context.range(), kernel, 0, height, rows);
+			int removed = pool.invoke(band);
+			
+			context.removed(removed);
+			changed.or(removed > 0);
+			
+			context.swapBitmap();
+		}
+	}
+	
+	/**
+	 * Executes the operation on the bit-packed image loaded into the given context
+	 * evaluating the kernels on several words at a time with the Java Vector API (see {@link VectorKernel}).
+	 * Falls back to {@link #execute(ThinningContext, ByteFlag)} if the Vector API is not available
+	 * or the image is held by the raster planes.
+	 * @param context A context holding a binarized image (modified in place)
+	 * @param changed Flag to signal if execution changed the image
+	 */
+	public static void executeVector(ThinningContext context, ByteFlag changed) {
+		VectorKernel vector = VectorKernel.get();
+		if(vector == null || !context.isBitmap()) {
+			execute(context, changed);
+			return;
+		}
+		
+		changed.set(false);
+		
+		for(int[] kernel : sub_pass_masks) {
+			int removed = vector.apply(context.bitSource(), context.bitTarget(), context.valid(), context.range(), kernel);
+			
+			context.removed(removed);
+			changed.or(removed > 0);
+			
+			context.swapBitmap();
+		}
+	}
+	
+	/** Applies the compiled kernel on the source image data, modifies the target image data and returns the number of removed pixels. */
+	private static int apply(WritableRaster source, WritableRaster target, int width, int height, boolean[] table, int[] pixel, int[] window) {
+		int removed = 0;
 		
 		for(int x = 1; x < width - 2; x++) {
 			for(int y = 1; y < height - 2; y++) {
@@ -65,9 +143,9 @@ public class Thinning {
 				
 				if(window[4] > 0x00) {
 					pixel[0] = 0xFF;
-				} else if(Util.matches(window, kernel)) {
+				} else if(table[Neighbourhood.code(window)]) {
 					pixel[0] = 0xFF;
-					changed = true;
+					removed++;
 				} else {
 					pixel[0] = 0x00;
 				}
@@ -76,7 +154,163 @@ public class Thinning {
 			}
 		}
 		
-		return changed;
+		return removed;
+	}
+	
+	/**
+	 * Executes the operation on a bit-packed image.
+	 * @param binarized A bit-packed binarized image (modified in place)
+	 * @param changed Flag to signal if execution changed the original image
+	 * @return The thinned image (the same instance as the parameter)
+	 */
+	public static BinaryImage execute(BinaryImage binarized, ByteFlag changed) {
+		changed.set(false);
+		
+		int width  = binarized.getWidth();
+		int height = binarized.getHeight();
+		int stride = binarized.getStride();
+		
+		BinaryImage source = binarized;
+		BinaryImage target = new BinaryImage(width, height);
+		
+		long[] valid = new long[stride];
+		long[] range = new long[stride];
+		for(int index = 0; index < stride; index++) {
+			valid[index] = BinaryImage.columnMask(index, 0, width - 1);
+			range[index] = BinaryImage.columnMask(index, 1, width - 3);
+		}
+		
+		for(int[] kernel : sub_pass_masks) {
+			changed.or( apply(source, target, valid, range, kernel) > 0 );
+			
+			BinaryImage swap = source;
+			source = target;
+			target = swap;
+		}
+		
+		// after an even number of swaps the result is back in the original instance
+		return source;
+	}
+	
+	/** Applies the given kernel on 64 pixels at a time of the source image, writes the target image and returns the number of removed pixels. */
+	private static int apply(BinaryImage source, BinaryImage target, long[] valid, long[] range, int[] kernel) {
+		return apply(source, target, valid, range, kernel, 0, source.getHeight());
+	}
+	
+	/** Applies the given kernel on the rows in <code>[fromRow, toRow)</code> of the source image, writes the target image and returns the number of removed pixels. */
+	private static int apply(BinaryImage source, BinaryImage target, long[] valid, long[] range, int[] kernel, int fromRow, int toRow) {
+		int removed = 0;
+		
+		int height = source.getHeight();
+		int stride = source.getStride();
+		
+		long[] src = source.getWords();
+		long[] dst = target.getWords();
+		
+		for(int y = fromRow; y < toRow; y++) {
+			boolean inner = y >= 1 && y < height - 2;
+			int offset = y * stride;
+			
+			for(int index = 0; index < stride; index++) {
+				long pixels = src[offset + index];
+				long result = applyWord(source, y, index, valid[index], inner ? range[index] : 0L, kernel);
+				
+				removed += Long.bitCount(pixels & ~result);
+				dst[offset + index] = result;
+			}
+		}
+		
+		return removed;
+	}
+	
+	/**
+	 * Applies the given kernel on a single word of the source image.
+	 * @param source The bit-packed source image
+	 * @param y The row of the word
+	 * @param index The index of the word in the row
+	 * @param valid The bits of the word holding pixels of the image
+	 * @param columns The bits of the word inside the processed range (zero outside of the processed rows)
+	 * @param kernel The kernel to apply
+	 * @return The new value of the word
+	 */
+	static long applyWord(BinaryImage source, int y, int index, long valid, long columns, int[] kernel) {
+		long pixels  = source.getWords()[y * source.getStride() + index];
+		
+		long removed = 0L;
+		if((pixels & columns) != 0L) {
+			removed = source.match(y, index, kernel) & pixels & columns;
+		}
+		
+		// pixels outside of the processed range are set to dark just like on the raster path
+		return (pixels & columns & ~removed) | (valid & ~columns);
+	}
+	
+	/** Task applying a kernel on a band of rows, splitting it in halves while it is too high. */
+	private static class Band extends RecursiveTask<Integer> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** The source and target planes. */
+		private final BinaryImage source, target;
+		/** The valid and processed bits for each word index. */
+		private final long[] valid, range;
+		/** The kernel to apply. */
+		private final int[] kernel;
+		/** The first row of the band (inclusive). */
+		private final int fromRow;
+		/** The last row of the band (exclusive). */
+		private final int toRow;
+		/** The maximum height of a band processed without splitting. */
+		private final int rows;
+		
+		/** Constructor. */
+		Band(BinaryImage source, BinaryImage target, long[] valid, long[] range, int[] kernel, int fromRow, int toRow, int rows) {
+			this.source  = source;
+			this.target  = target;
+			this.valid   = valid;
+			this.range   = range;
+			this.kernel  = kernel;
+			this.fromRow = fromRow;
+			this.toRow   = toRow;
+			this.rows 	 = rows;
+		}
+		
+		/* @see java.util.concurrent.RecursiveTask#compute() */
+		@Override protected Integer compute() {
+			if(toRow - fromRow <= rows) {
+				return apply(source, target, valid, range, kernel, fromRow, toRow);
+			}
+			
+			int middle = (fromRow + toRow) >>> 1;
+			
+			Band upper = new Band(source, target, valid, range, kernel, fromRow, middle, rows);
+			Band lower = new Band(source, target, valid, range, kernel, middle, toRow, rows);
+			
+			upper.fork();
+			int removed = lower.compute();
+			return upper.join() + removed;
+		}
+		
+	}
+	
+	/** Returns the (shared) masks of the sub-passes of a single execution in their order of application. */
+	static int[][] subPassMasks() {
+		return sub_pass_masks;
+	}
+	
+	/** Precomputes the rotated masks of the sub-passes in their order of application. */
+	private static int[][] rotateMasks(int[] tmask, int[] hmask) {
+		int[][] masks = new int[8][];
+		
+		for(int rotate = 0; rotate < 4; rotate++) {
+			masks[2 * rotate] 	  = tmask;
+			masks[2 * rotate + 1] = hmask;
+			
+			tmask = Util.rotateCounterClockwise(tmask);
+			hmask = Util.rotateCounterClockwise(hmask);
+		}
+		
+		return masks;
 	}
 	
 	/** Mask/kernel for the hit-and-miss operation. */
@@ -95,4 +329,21 @@ public class Thinning {
 		0x00, 0x00, 0x00
 	};
 	
+	/** The minimum height of a band processed by a single parallel task. */
+	private static final int MIN_BAND_HEIGHT = 16;
+	
+	/** The pool executing the parallel bands (the common pool, shared by the concurrent thinnings). */
+	private static final ForkJoinPool pool = ForkJoinPool.commonPool();
+	
+	/** The rotated masks of the sub-passes in their order of application. */
+	private static final int[][] sub_pass_masks = rotateMasks(thinning_kernel, hit_and_miss_mask);
+	
+	/** The masks of the sub-passes compiled into neighbour code tables. */
+	private static final boolean[][] sub_pass_tables = new boolean[sub_pass_masks.length][];
+	static {
+		for(int pass = 0; pass < sub_pass_masks.length; pass++) {
+			sub_pass_tables[pass] = Neighbourhood.compile(sub_pass_masks[pass]);
+		}
+	}
+	
 }
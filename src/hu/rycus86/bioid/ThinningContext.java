@@ -0,0 +1,216 @@
+package hu.rycus86.bioid;
+
+import hu.rycus86.bioid.util.BinaryImage;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+/**
+ * Reusable state for executing the Thinning algorithm without allocations.
+ * 
+ * The context owns two pre-sized planes (gray 1-byte images for the raster engine,
+ * bit-packed images for the bitmap engines) that are swapped between the sub-passes
+ * instead of copying the result back after each of them.
+ * The planes are only reallocated when an image of a different size is loaded.
+ * 
+ * @author viktor.adam
+ */
+public class ThinningContext {
+	
+	/** The width of the planes. */
+	private int width  = -1;
+	/** The height of the planes. */
+	private int height = -1;
+	
+	/** The raster plane holding the current image. */
+	private BufferedImage front;
+	/** The raster plane receiving the result of the next sub-pass. */
+	private BufferedImage back;
+	/** Should the border of the back plane be cleared after the next sub-pass? */
+	private boolean clearBack;
+	
+	/** The bit-packed plane holding the current image. */
+	private BinaryImage bitFront;
+	/** The bit-packed plane receiving the result of the next sub-pass. */
+	private BinaryImage bitBack;
+	/** The bits holding pixels of the image for each word index. */
+	private long[] valid;
+	/** The bits inside the processed range for each word index. */
+	private long[] range;
+	
+	/** The incremental thinning state for the bit-packed plane. */
+	private IncrementalThinning incremental;
+	
+	/** Is the current image held by the bit-packed planes? */
+	private boolean bitmap;
+	
+	/** The number of pixels removed from the current image by the sub-passes executed on the planes. */
+	private int removed;
+	
+	/** Buffer for a single row of samples. */
+	private int[] row = new int[0];
+	/** Buffer for a single pixel. */
+	final int[] pixel  = new int[1];
+	/** Buffer for a 3x3 window. */
+	final int[] window = new int[9];
+	
+	/** Loads a copy of the given binarized image into the raster planes. */
+	public void load(BufferedImage binarized) {
+		resize(binarized.getWidth(), binarized.getHeight());
+		
+		if(front == null) {
+			front = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+			back  = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		}
+		
+		WritableRaster source = binarized.getRaster();
+		WritableRaster target = front.getRaster();
+		
+		for(int y = 0; y < height; y++) {
+			source.getSamples(0, y, width, 1, 0, row);
+			target.setSamples(0, y, width, 1, 0, row);
+		}
+		
+		// the unprocessed border of a new image is dark, the first sub-pass still reads the original one
+		clearBorder(back.getRaster());
+		clearBack = true;
+		
+		bitmap  = false;
+		removed = 0;
+	}
+	
+	/** Loads a bit-packed copy of the given binarized image into the bit-packed planes and returns it. */
+	public BinaryImage loadBitmap(BufferedImage binarized) {
+		resize(binarized.getWidth(), binarized.getHeight());
+		
+		if(bitFront == null) {
+			bitFront = new BinaryImage(width, height);
+			bitBack  = new BinaryImage(width, height);
+			
+			int stride = bitFront.getStride();
+			
+			valid = new long[stride];
+			range = new long[stride];
+			for(int index = 0; index < stride; index++) {
+				valid[index] = BinaryImage.columnMask(index, 0, width - 1);
+				range[index] = BinaryImage.columnMask(index, 1, width - 3);
+			}
+		}
+		
+		bitFront.readFrom(binarized, row);
+		
+		if(incremental != null) {
+			incremental.reset(bitFront);
+		}
+		
+		bitmap  = true;
+		removed = 0;
+		
+		return bitFront;
+	}
+	
+	/** Returns the current raster image (valid until the next load). */
+	public BufferedImage getImage() {
+		return front;
+	}
+	
+	/** Returns the current bit-packed image (valid until the next load). */
+	public BinaryImage getBitmap() {
+		return bitFront;
+	}
+	
+	/** Returns true if the current image is held by the bit-packed planes. */
+	public boolean isBitmap() {
+		return bitmap;
+	}
+	
+	/** Returns the incremental thinning state for the current bit-packed image. */
+	public IncrementalThinning getIncremental() {
+		if(incremental == null) {
+			incremental = new IncrementalThinning(bitFront);
+		}
+		return incremental;
+	}
+	
+	/** Returns the number of pixels removed from the current image since it was loaded (not counting the incremental executions). */
+	public int getRemoved() {
+		return removed;
+	}
+	
+	/** Returns the raster plane holding the current image. */
+	WritableRaster source() { return front.getRaster(); }
+	/** Returns the raster plane receiving the result of the next sub-pass. */
+	WritableRaster target() { return back.getRaster(); }
+	
+	/** Returns the bit-packed plane holding the current image. */
+	BinaryImage bitSource() { return bitFront; }
+	/** Returns the bit-packed plane receiving the result of the next sub-pass. */
+	BinaryImage bitTarget() { return bitBack; }
+	
+	/** Returns the bits holding pixels of the image for each word index. */
+	long[] valid() { return valid; }
+	/** Returns the bits inside the processed range for each word index. */
+	long[] range() { return range; }
+	
+	/** Returns the width of the planes. */
+	int width()  { return width; }
+	/** Returns the height of the planes. */
+	int height() { return height; }
+	
+	/** Adds the number of pixels removed by a sub-pass. */
+	void removed(int pixels) {
+		removed += pixels;
+	}
+	
+	/** Swaps the raster planes after a sub-pass. */
+	void swap() {
+		BufferedImage swap = front;
+		front = back;
+		back  = swap;
+		
+		if(clearBack) {
+			clearBorder(back.getRaster());
+			clearBack = false;
+		}
+	}
+	
+	/** Swaps the bit-packed planes after a sub-pass. */
+	void swapBitmap() {
+		BinaryImage swap = bitFront;
+		bitFront = bitBack;
+		bitBack  = swap;
+	}
+	
+	/** Drops the planes if their size differs from the given one. */
+	private void resize(int width, int height) {
+		if(this.width == width && this.height == height) return;
+		
+		this.width  = width;
+		this.height = height;
+		
+		front 		= null;
+		back 		= null;
+		bitFront 	= null;
+		bitBack 	= null;
+		incremental = null;
+		
+		row = new int[width];
+	}
+	
+	/** Sets the pixels outside of the processed range to dark. */
+	private void clearBorder(WritableRaster raster) {
+		for(int y = 0; y < height; y++) {
+			if(y >= 1 && y < height - 2) {
+				raster.setSample(0, y, 0, 0x00);
+				for(int x = Math.max(width - 2, 1); x < width; x++) {
+					raster.setSample(x, y, 0, 0x00);
+				}
+			} else {
+				for(int x = 0; x < width; x++) {
+					raster.setSample(x, y, 0, 0x00);
+				}
+			}
+		}
+	}
+	
+}
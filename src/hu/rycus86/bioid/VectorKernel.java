@@ -0,0 +1,58 @@
+package hu.rycus86.bioid;
+
+import hu.rycus86.bioid.util.BinaryImage;
+import hu.rycus86.bioid.util.Log;
+
+/**
+ * Applies the Thinning kernels on several words of a bit-packed image at a time.
+ * 
+ * The implementation is built on the incubating Java Vector API, it is compiled from the
+ * <code>src-vector</code> folder by the <code>vector</code> Maven profile only and loaded by name,
+ * so the analyzer still builds and runs without it. {@link #get()} returns null if the implementation
+ * is not on the class path or the <code>jdk.incubator.vector</code> module is not available
+ * (it has to be added with <code>--add-modules jdk.incubator.vector</code>).
+ * 
+ * @author viktor.adam
+ */
+public abstract class VectorKernel {
+	
+	/** The name of the implementation class. */
+	private static final String IMPLEMENTATION = "hu.rycus86.bioid.VectorThinning";
+	
+	/** The loaded implementation (or null if it is not available). */
+	private static final VectorKernel instance = load();
+	
+	/** Returns true if the implementation is available. */
+	public static boolean isAvailable() {
+		return instance != null;
+	}
+	
+	/** Returns the implementation (or null if it is not available). */
+	static VectorKernel get() {
+		return instance;
+	}
+	
+	/**
+	 * Applies the given kernel on the source image and writes the target image
+	 * with the same results as {@link Thinning#applyWord(BinaryImage, int, int, long, long, int[])} for each word.
+	 * @param source The bit-packed source image
+	 * @param target The bit-packed target image of the same size
+	 * @param valid The bits holding pixels of the image for each word index
+	 * @param range The bits inside the processed range for each word index
+	 * @param kernel The kernel to apply
+	 * @return The number of removed pixels
+	 */
+	public abstract int apply(BinaryImage source, BinaryImage target, long[] valid, long[] range, int[] kernel);
+	
+	/** Loads the implementation, returns null if it is not available. */
+	private static VectorKernel load() {
+		try {
+			return (VectorKernel) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+		} catch(Exception | LinkageError ex) {
+			// not compiled into this build or the module has not been added
+			Log.debug(() -> "The Vector API engine is not available: " + ex);
+			return null;
+		}
+	}
+	
+}
@@ -0,0 +1,195 @@
+package hu.rycus86.bioid.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * Bit-packed binary image storing one bit per pixel in <code>long</code> words.
+ * 
+ * A set bit marks a dark (0x00) pixel, a cleared bit marks a white (0xFF) one.
+ * Pixel <code>x</code> of a row is stored in word <code>x / 64</code> at bit <code>x % 64</code>,
+ * bits beyond the width of the image are always cleared.
+ * 
+ * @author viktor.adam
+ */
+public class BinaryImage {
+	
+	/** The width of the image. */
+	private final int width;
+	/** The height of the image. */
+	private final int height;
+	/** The number of words in a single row. */
+	private final int stride;
+	
+	/** The pixel data, row by row. */
+	private final long[] words;
+	
+	/** Constructor for an all-white image. */
+	public BinaryImage(int width, int height) {
+		this.width  = width;
+		this.height = height;
+		this.stride = (width + 63) >>> 6;
+		this.words  = new long[stride * height];
+	}
+	
+	/** Creates a bit-packed copy of the given binarized image. */
+	public static BinaryImage fromImage(BufferedImage binarized) {
+		BinaryImage image = new BinaryImage(binarized.getWidth(), binarized.getHeight());
+		image.readFrom(binarized, new int[image.width]);
+		return image;
+	}
+	
+	/**
+	 * Overwrites this image with the pixels of a binarized image of the same size.
+	 * @param binarized A binarized image
+	 * @param row Buffer for a single row of samples (at least as long as the width)
+	 */
+	public void readFrom(BufferedImage binarized, int[] row) {
+		Raster raster = binarized.getRaster();
+		
+		for(int y = 0; y < height; y++) {
+			raster.getSamples(0, y, width, 1, 0, row);
+			
+			int offset = y * stride;
+			for(int index = 0; index < stride; index++) {
+				long word = 0L;
+				
+				int end = Math.min((index + 1) << 6, width);
+				for(int x = index << 6; x < end; x++) {
+					if(row[x] == 0x00) word |= 1L << x;
+				}
+				
+				words[offset + index] = word;
+			}
+		}
+	}
+	
+	/** Converts this image into a gray 1-byte image. */
+	public BufferedImage toImage() {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		
+		WritableRaster raster = image.getRaster();
+		int[] row = new int[width];
+		
+		for(int y = 0; y < height; y++) {
+			int offset = y * stride;
+			for(int x = 0; x < width; x++) {
+				row[x] = (words[offset + (x >>> 6)] & (1L << x)) != 0 ? 0x00 : 0xFF;
+			}
+			
+			raster.setSamples(0, y, width, 1, 0, row);
+		}
+		
+		return image;
+	}
+	
+	/** Returns the width of the image. */
+	public int getWidth() { return width; }
+	/** Returns the height of the image. */
+	public int getHeight() { return height; }
+	/** Returns the number of words in a single row. */
+	public int getStride() { return stride; }
+	
+	/** Returns the backing pixel data (row <code>y</code> starts at <code>y * stride</code>). */
+	public long[] getWords() { return words; }
+	
+	/** Returns true if the pixel at the given position is dark. */
+	public boolean isDark(int x, int y) {
+		return (words[y * stride + (x >>> 6)] & (1L << x)) != 0;
+	}
+	
+	/** Sets the pixel at the given position to dark or white. */
+	public void setDark(int x, int y, boolean dark) {
+		if(dark) {
+			words[y * stride + (x >>> 6)] |= 1L << x;
+		} else {
+			words[y * stride + (x >>> 6)] &= ~(1L << x);
+		}
+	}
+	
+	/**
+	 * Returns the pixels of word <code>index</code> in row <code>y</code>
+	 * shifted by <code>dx</code> (-1, 0 or +1) columns:
+	 * bit <code>b</code> of the result holds the pixel at <code>64 * index + b + dx</code>.
+	 */
+	public long shifted(int y, int index, int dx) {
+		int offset = y * stride + index;
+		long word  = words[offset];
+		
+		if(dx < 0) {
+			long carry = index > 0 ? words[offset - 1] >>> 63 : 0L;
+			return (word << 1) | carry;
+		} else if(dx > 0) {
+			long carry = index + 1 < stride ? words[offset + 1] << 63 : 0L;
+			return (word >>> 1) | carry;
+		} else {
+			return word;
+		}
+	}
+	
+	/**
+	 * Evaluates a 3x3 mask for 64 pixels at once.
+	 * @param y The row of the center pixels (must have a row above and below)
+	 * @param index The index of the word in the row
+	 * @param mask The mask to match (0x00 dark, 0xFF white, 0xAA don't care)
+	 * @return The pixels of the word whose 3x3 window matches the mask
+	 */
+	public long match(int y, int index, int[] mask) {
+		long result = -1L;
+		
+		for(int idx = 0; idx < 9 && result != 0L; idx++) {
+			int m = mask[idx];
+			if(m == 0xAA) continue;
+			
+			long neighbours = shifted(y + (idx / 3) - 1, index, (idx % 3) - 1);
+			result &= m == 0x00 ? neighbours : ~neighbours;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the 3x3 window around the given position as a 9-bit code:
+	 * bit <code>idx</code> is set if the pixel at window index <code>idx</code> is dark
+	 * (index order matches {@link Util#matches(int[], int[])}).
+	 */
+	public int window(int x, int y) {
+		int code = 0;
+		for(int dy = 0; dy < 3; dy++) {
+			code |= row3(x - 1, y - 1 + dy) << (dy * 3);
+		}
+		return code;
+	}
+	
+	/** Returns the three pixels starting at (x, y) as a 3-bit code. */
+	private int row3(int x, int y) {
+		int offset = y * stride + (x >>> 6);
+		int bit    = x & 63;
+		
+		long bits = words[offset] >>> bit;
+		if(bit > 61 && (x >>> 6) + 1 < stride) {
+			bits |= words[offset + 1] << (64 - bit);
+		}
+		
+		return (int) (bits & 7L);
+	}
+	
+	/** Copies the pixel data of the given image of the same size into this one. */
+	public void copyFrom(BinaryImage other) {
+		System.arraycopy(other.words, 0, words, 0, words.length);
+	}
+	
+	/** Returns a mask with the bits of word <code>index</code> set for the columns in <code>[from, to]</code>. */
+	public static long columnMask(int index, int from, int to) {
+		int first = Math.max(from - (index << 6), 0);
+		int last  = Math.min(to - (index << 6), 63);
+		
+		if(first > last) return 0L;
+		
+		long upper = last == 63 ? -1L : (1L << (last + 1)) - 1;
+		long lower = (1L << first) - 1;
+		return upper & ~lower;
+	}
+	
+}
@@ -0,0 +1,213 @@
+package hu.rycus86.bioid.util;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid spatial index over points of an image for radius and nearest neighbour queries.
+ * 
+ * The image is divided into square cells, each point is linked into the list of its cell
+ * (the first point of each cell and the next point in the same cell are kept in arrays),
+ * so adding a point takes constant time and a query only visits the cells overlapping its range.
+ * Points are identified by the index they were added at.
+ * 
+ * @author viktor.adam
+ */
+public class GridIndex {
+	
+	/** The size of the cells (in pixels). */
+	private final int cellSize;
+	/** The number of cells on the horizontal axis. */
+	private final int columns;
+	/** The number of cells on the vertical axis. */
+	private final int rows;
+	
+	/** The first point in each cell (or -1). */
+	private final int[] heads;
+	/** The next point in the same cell (or -1). */
+	private int[] next;
+	
+	/** The X coordinates of the points. */
+	private int[] xs;
+	/** The Y coordinates of the points. */
+	private int[] ys;
+	/** The number of points. */
+	private int size;
+	
+	/** Constructor for an empty index over an image of the given size. */
+	public GridIndex(int width, int height, int cellSize) {
+		this(width, height, cellSize, 16);
+	}
+	
+	/** Constructor for an empty index over an image of the given size with the given initial capacity. */
+	public GridIndex(int width, int height, int cellSize, int capacity) {
+		capacity = Math.max(capacity, 1);
+		
+		this.cellSize = Math.max(cellSize, 1);
+		this.columns  = Math.max((width  + this.cellSize - 1) / this.cellSize, 1);
+		this.rows 	  = Math.max((height + this.cellSize - 1) / this.cellSize, 1);
+		
+		this.heads = new int[columns * rows];
+		Arrays.fill(heads, -1);
+		
+		this.next = new int[capacity];
+		this.xs   = new int[capacity];
+		this.ys   = new int[capacity];
+	}
+	
+	/** Returns an index over the given minutiae (the indexes of the points are the indexes of the minutiae). */
+	public static GridIndex of(Minutiae minutiae, int width, int height, int cellSize) {
+		GridIndex index = new GridIndex(width, height, cellSize, minutiae.size());
+		for(int idx = 0; idx < minutiae.size(); idx++) {
+			index.add(minutiae.getX(idx), minutiae.getY(idx));
+		}
+		return index;
+	}
+	
+	/** Adds a point to the index, returns its index (points outside the image belong to the nearest cell). */
+	public int add(int x, int y) {
+		if(size == xs.length) {
+			int capacity = size * 2;
+			
+			next = Arrays.copyOf(next, capacity);
+			xs 	 = Arrays.copyOf(xs, capacity);
+			ys 	 = Arrays.copyOf(ys, capacity);
+		}
+		
+		int cell = row(y) * columns + column(x);
+		
+		xs[size]    = x;
+		ys[size]    = y;
+		next[size]  = heads[cell];
+		heads[cell] = size;
+		
+		return size++;
+	}
+	
+	/** Returns the number of points. */
+	public int size() { return size; }
+	
+	/** Returns the X coordinate of the point at the given index. */
+	public int getX(int index) { return xs[index]; }
+	/** Returns the Y coordinate of the point at the given index. */
+	public int getY(int index) { return ys[index]; }
+	
+	/**
+	 * Searches for the points within the given distance of a location.
+	 * @param x The X coordinate of the location
+	 * @param y The Y coordinate of the location
+	 * @param radius The maximum (inclusive) distance of the points
+	 * @param result The array to put the indexes of the found points into (may be null to only count them)
+	 * @return The number of found points (only as many of them are put into the result as it can hold)
+	 */
+	public int within(int x, int y, int radius, int[] result) {
+		long limit = (long) radius * radius;
+		
+		int minColumn = column(x - radius);
+		int maxColumn = column(x + radius);
+		int minRow 	  = row(y - radius);
+		int maxRow 	  = row(y + radius);
+		
+		int count = 0;
+		
+		for(int row = minRow; row <= maxRow; row++) {
+			for(int column = minColumn; column <= maxColumn; column++) {
+				for(int idx = heads[row * columns + column]; idx >= 0; idx = next[idx]) {
+					if(distance(idx, x, y) <= limit) {
+						if(result != null && count < result.length) result[count] = idx;
+						count++;
+					}
+				}
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Searches for the points nearest to a location.
+	 * @param x The X coordinate of the location
+	 * @param y The Y coordinate of the location
+	 * @param exclude The index of a point to leave out of the results (e.g. the one at the location, or -1)
+	 * @param result The array to put the indexes of the found points into, its length is the number of points to find
+	 * @return The number of found points (less than requested if the index has less points), the nearest first
+	 */
+	public int nearest(int x, int y, int exclude, int[] result) {
+		int k = result.length;
+		if(k == 0) return 0;
+		
+		long[] distances = new long[k];
+		int count = 0;
+		
+		int column = column(x);
+		int row    = row(y);
+		
+		int rings = Math.max(columns, rows);
+		
+		for(int ring = 0; ring < rings; ring++) {
+			// the cells of further rings are at least this far from the location
+			if(count == k && ring > 0) {
+				long reach = (long) (ring - 1) * cellSize + gap(x, y, column, row);
+				if(reach * reach > distances[k - 1]) break;
+			}
+			
+			for(int cy = row - ring; cy <= row + ring; cy++) {
+				if(cy < 0 || cy >= rows) continue;
+				
+				// only the border cells of the ring are new
+				int step = cy == row - ring || cy == row + ring ? 1 : Math.max(2 * ring, 1);
+				
+				for(int cx = column - ring; cx <= column + ring; cx += step) {
+					if(cx < 0 || cx >= columns) continue;
+					
+					for(int idx = heads[cy * columns + cx]; idx >= 0; idx = next[idx]) {
+						if(idx == exclude) continue;
+						
+						long distance = distance(idx, x, y);
+						if(count == k && distance >= distances[k - 1]) continue;
+						
+						// insertion into the sorted results
+						int position = count < k ? count++ : k - 1;
+						while(position > 0 && distances[position - 1] > distance) {
+							distances[position] = distances[position - 1];
+							result[position] 	 = result[position - 1];
+							position--;
+						}
+						
+						distances[position] = distance;
+						result[position] 	 = idx;
+					}
+				}
+			}
+		}
+		
+		return count;
+	}
+	
+	/** Returns the distance of the location from the border of its own cell (0 if it is outside the image). */
+	private int gap(int x, int y, int column, int row) {
+		int left   = x - column * cellSize;
+		int top    = y - row * cellSize;
+		int right  = cellSize - 1 - left;
+		int bottom = cellSize - 1 - top;
+		
+		return Math.max(0, Math.min(Math.min(left, right), Math.min(top, bottom)));
+	}
+	
+	/** Returns the squared distance of the point at the given index from a location. */
+	private long distance(int index, int x, int y) {
+		long dx = xs[index] - x;
+		long dy = ys[index] - y;
+		return dx * dx + dy * dy;
+	}
+	
+	/** Returns the column of the cell of the given X coordinate (clamped to the image). */
+	private int column(int x) {
+		return Math.min(Math.max(x, 0) / cellSize, columns - 1);
+	}
+	
+	/** Returns the row of the cell of the given Y coordinate (clamped to the image). */
+	private int row(int y) {
+		return Math.min(Math.max(y, 0) / cellSize, rows - 1);
+	}
+	
+}
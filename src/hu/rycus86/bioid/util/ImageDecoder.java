@@ -0,0 +1,133 @@
+package hu.rycus86.bioid.util;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Helper class for decoding images with reusable readers.
+ * 
+ * Each thread has its own instance (see {@link #get()}) keeping one reader per file suffix,
+ * so the service registry is only searched for the first image of each format.
+ * Images stored with a single 8-bit gray channel are decoded directly into a gray 1-byte image
+ * (the maximum of the channels is the gray value itself, so binarization is not affected).
+ * 
+ * @author viktor.adam
+ */
+public class ImageDecoder {
+	
+	/** The decoder of the current thread. */
+	private static final ThreadLocal<ImageDecoder> decoder = new ThreadLocal<ImageDecoder>() {
+		/* @see java.lang.ThreadLocal#initialValue() */
+		@Override protected ImageDecoder initialValue() { return new ImageDecoder(); }
+	};
+	
+	/** The cached readers by lower case file suffix. */
+	private final Map<String, ImageReader> readers = new HashMap<>();
+	
+	/** Returns the decoder of the current thread. */
+	public static ImageDecoder get() {
+		return decoder.get();
+	}
+	
+	/** Decodes the whole image in the given file (returns null if no reader can decode it). */
+	public BufferedImage read(File file) throws IOException {
+		return read(file, 1, null);
+	}
+	
+	/**
+	 * Decodes an image from the given file.
+	 * @param file The image file
+	 * @param subsampling Only every <code>subsampling</code>-th pixel is decoded in both directions (1 for all of them)
+	 * @param region The region of the image to decode (or null for the whole image)
+	 * @return The decoded image or null if no reader can decode the file
+	 */
+	public BufferedImage read(File file, int subsampling, Rectangle region) throws IOException {
+		try ( ImageInputStream stream = ImageIO.createImageInputStream(file) ) {
+			if(stream == null) {
+				throw new IOException("Can't create an input stream for " + file);
+			}
+			
+			String suffix = suffix(file);
+			
+			ImageReader reader = readers.get(suffix);
+			if(reader == null || !reader.getOriginatingProvider().canDecodeInput(stream)) {
+				// the content does not match the suffix (or it is the first one), ask the registry
+				Iterator<ImageReader> iterator = ImageIO.getImageReaders(stream);
+				if(!iterator.hasNext()) return null;
+				
+				reader = iterator.next();
+				
+				if(!readers.containsKey(suffix)) {
+					readers.put(suffix, reader);
+				}
+			}
+			
+			reader.setInput(stream, true, true);
+			
+			try {
+				ImageReadParam param = reader.getDefaultReadParam();
+				
+				if(subsampling > 1) {
+					param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				}
+				
+				if(region != null) {
+					param.setSourceRegion(region);
+				}
+				
+				ImageTypeSpecifier grayType = findGrayType(reader);
+				if(grayType != null) {
+					param.setDestinationType(grayType);
+				}
+				
+				return reader.read(0, param);
+			} finally {
+				reader.setInput(null);
+				
+				// readers obtained for a single image are not reused
+				if(reader != readers.get(suffix)) reader.dispose();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the gray 1-byte image type offered by the reader for the first image
+	 * if it is stored with a single 8-bit gray channel (or null).
+	 * Color images are never decoded to gray as luminance differs from the maximum of the channels.
+	 */
+	private static ImageTypeSpecifier findGrayType(ImageReader reader) throws IOException {
+		ImageTypeSpecifier raw = reader.getRawImageType(0);
+		if(raw == null || raw.getNumBands() != 1 || raw.getBitsPerBand(0) != 8) return null;
+		if(raw.getColorModel().getColorSpace().getType() != ColorSpace.TYPE_GRAY) return null;
+		
+		Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+		while(types.hasNext()) {
+			ImageTypeSpecifier type = types.next();
+			if(type.getBufferedImageType() == BufferedImage.TYPE_BYTE_GRAY) {
+				return type;
+			}
+		}
+		return null;
+	}
+	
+	/** Returns the lower case suffix of the file name (or an empty string). */
+	private static String suffix(File file) {
+		String name = file.getName();
+		if(!name.contains(".")) return "";
+		return name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ENGLISH);
+	}
+	
+}
@@ -1,38 +1,246 @@
 package hu.rycus86.bioid.util;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 /**
  * Helper class for logging.
  * 
+ * Messages below the current level are dropped before their text is built
+ * (messages given as a {@link Supplier} are not even evaluated).
+ * The lines are put into a bounded ring buffer and printed on the system console by a background writer,
+ * so the workers do not wait on the console. A full buffer blocks the loggers until the writer catches up.
+ * 
  * @author viktor.adam
  */
 public class Log {
 
+	/** The levels of the messages. */
+	public enum Level {
+		
+		/** Detailed messages for finding problems. */
+		DEBUG,
+		/** Messages about the progress. */
+		INFO,
+		/** Messages about unexpected but handled situations. */
+		WARN,
+		/** Messages about failures. */
+		ERROR;
+		
+		/**
+		 * Returns the level with the given (case-insensitive) name.
+		 * @throws IllegalArgumentException if there is no level with the given name
+		 */
+		public static Level parse(String name) {
+			return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+		}
+		
+		/** Returns the (lower case) names of the levels separated by commas. */
+		public static String names() {
+			StringBuilder builder = new StringBuilder();
+			for(Level level : values()) {
+				if(builder.length() > 0) builder.append(", ");
+				builder.append(level.name().toLowerCase(Locale.ENGLISH));
+			}
+			return builder.toString();
+		}
+		
+	}
+	
+	/** The number of lines the buffer can hold. */
+	private static final int CAPACITY = 4096;
+	
 	/** The name of the logger on the current thread. */
 	private static final ThreadLocal<String> name = new ThreadLocal<String>() {
 		/* @see java.lang.ThreadLocal#initialValue() */
 		@Override protected String initialValue() { return "anonymous"; }
 	};
 	
+	/** The lowest level of the printed messages. */
+	private static volatile Level level = Level.INFO;
+	
+	/** The lines waiting to be printed. */
+	private static final BlockingQueue<Entry> buffer = new ArrayBlockingQueue<>(CAPACITY);
+	
+	/** Is the background writer stopped (the lines are printed directly then)? */
+	private static volatile boolean stopped = false;
+	
+	/** The background writer printing the lines. */
+	private static final Thread writer = new Thread(new Writer(), "log-writer");
+	
+	static {
+		writer.setDaemon(true);
+		writer.start();
+		
+		// prints the lines still in the buffer on exit
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			/* @see java.lang.Runnable#run() */
+			@Override public void run() {
+				stop();
+			}
+		}, "log-shutdown"));
+	}
+	
 	/** Initializes the logger with the given name. */
 	public static void init(String name) {
 		Log.name.set(name);
 	}
 	
+	/** Sets the lowest level of the printed messages. */
+	public static void setLevel(Level level) {
+		Log.level = level;
+	}
+	
+	/** Returns true if messages of the given level are printed. */
+	public static boolean isEnabled(Level level) {
+		return level.compareTo(Log.level) >= 0;
+	}
+	
+	/** Prints a debug message on the system console. */
+	public static void debug(String message) {
+		log(Level.DEBUG, message, null);
+	}
+	
+	/** Prints a debug message on the system console, the message is only built if debug messages are printed. */
+	public static void debug(Supplier<String> message) {
+		if(isEnabled(Level.DEBUG)) log(Level.DEBUG, message.get(), null);
+	}
+	
 	/** Prints an info message on the system console. */
 	public static void info(String message) {
 		info(message, null);
 	}
 	
+	/** Prints an info message on the system console, the message is only built if info messages are printed. */
+	public static void info(Supplier<String> message) {
+		if(isEnabled(Level.INFO)) log(Level.INFO, message.get(), null);
+	}
+	
 	/** Prints an info message and (optionally) an exception on the system console. */
 	public static void info(String message, Throwable th) {
-		System.out.println(Log.name.get() + ": " + message);
-		if(th != null) th.printStackTrace(System.out);
+		log(Level.INFO, message, th);
+	}
+	
+	/** Prints a warning message on the system console. */
+	public static void warn(String message) {
+		log(Level.WARN, message, null);
 	}
 	
 	/** Prints an error message and (optionally) an exception on the system console. */
 	public static void error(String message, Throwable th) {
-		System.err.println(Log.name.get() + ": " + message);
-		if(th != null) th.printStackTrace(System.err);
+		log(Level.ERROR, message, th);
+	}
+	
+	/** Prints an error message and (optionally) an exception on the system console, the message is only built if error messages are printed. */
+	public static void error(Supplier<String> message, Throwable th) {
+		if(isEnabled(Level.ERROR)) log(Level.ERROR, message.get(), th);
+	}
+	
+	/** Puts a line into the buffer if its level is enabled. */
+	private static void log(Level level, String message, Throwable th) {
+		if(!isEnabled(level)) return;
+		
+		Entry entry = new Entry(level, Log.name.get() + ": " + message, th);
+		
+		if(!stopped) {
+			try {
+				buffer.put(entry);
+				
+				// the writer may have printed the buffer for the last time in the meantime
+				if(!stopped || !buffer.remove(entry)) return;
+			} catch(InterruptedException ex) {
+				// print it directly instead
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		synchronized(buffer) {
+			entry.print();
+		}
+	}
+	
+	/** Stops the background writer and prints the lines still in the buffer. */
+	private static void stop() {
+		stopped = true;
+		writer.interrupt();
+		
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/** A line waiting to be printed. */
+	private static class Entry {
+		
+		/** The level of the message. */
+		private final Level level;
+		/** The line with the name of the logger. */
+		private final String line;
+		/** The exception to print (or null). */
+		private final Throwable th;
+		
+		/** Constructor. */
+		Entry(Level level, String line, Throwable th) {
+			this.level = level;
+			this.line  = line;
+			this.th    = th;
+		}
+		
+		/** Prints the line (warnings and errors to the standard error). */
+		void print() {
+			PrintStream stream = level.compareTo(Level.WARN) >= 0 ? System.err : System.out;
+			stream.println(line);
+			if(th != null) th.printStackTrace(stream);
+		}
+		
+	}
+	
+	/** Background task draining the buffer until the logging is stopped. */
+	private static class Writer implements Runnable {
+		
+		/* @see java.lang.Runnable#run() */
+		@Override public void run() {
+			List<Entry> batch = new ArrayList<>(CAPACITY);
+			
+			while(!stopped) {
+				try {
+					batch.add(buffer.take());
+				} catch(InterruptedException ex) {
+					// stopped, print what is left
+				}
+				
+				buffer.drainTo(batch);
+				print(batch);
+			}
+			
+			buffer.drainTo(batch);
+			print(batch);
+		}
+		
+		/** Prints and clears the batch of lines. */
+		private void print(List<Entry> batch) {
+			if(batch.isEmpty()) return;
+			
+			synchronized(buffer) {
+				for(Entry entry : batch) {
+					entry.print();
+				}
+				
+				System.out.flush();
+				System.err.flush();
+			}
+			
+			batch.clear();
+		}
+		
 	}
 	
 }
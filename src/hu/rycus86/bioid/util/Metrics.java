@@ -0,0 +1,276 @@
+package hu.rycus86.bioid.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Helper class collecting per-image and aggregate timings and counters of the analyzation.
+ * 
+ * Collection is disabled by default, the recording methods return immediately until {@link #enable()} is called.
+ * The aggregates are kept in atomic counters, the per-image samples are only collected
+ * into a list when an image is finished, so the workers don't wait on each other while measuring.
+ * 
+ * @author viktor.adam
+ */
+public class Metrics {
+	
+	/** The measured stages of the analyzation. */
+	public enum Stage {
+		
+		/** Reading the original image. */
+		DECODE,
+		/** Binarizing the original image. */
+		BINARIZE,
+		/** A single execution of the Thinning algorithm. */
+		THINNING_ITERATION,
+		/** Running the Thinning algorithm until nothing changes. */
+		THINNING,
+		/** Finding the endings and branches. */
+		EXTRACT,
+		/** Writing the results. */
+		SERIALIZE;
+		
+		/** Returns the name of the stage used in the output files. */
+		public String key() {
+			return name().toLowerCase(Locale.ENGLISH);
+		}
+		
+	}
+	
+	/** Is the collection enabled? */
+	private static volatile boolean enabled = false;
+	
+	/** The number of executions of each stage. */
+	private static final AtomicLong[] calls = counters(Stage.values().length);
+	/** The total time spent in each stage (in nanoseconds). */
+	private static final AtomicLong[] totals = counters(Stage.values().length);
+	/** The longest execution of each stage (in nanoseconds). */
+	private static final AtomicLong[] maximums = counters(Stage.values().length);
+	
+	/** The number of finished images. */
+	private static final AtomicLong images = new AtomicLong();
+	/** The number of pixels removed by the Thinning algorithm. */
+	private static final AtomicLong removedPixels = new AtomicLong();
+	/** The number of found endings. */
+	private static final AtomicLong endings = new AtomicLong();
+	/** The number of found branches. */
+	private static final AtomicLong branches = new AtomicLong();
+	
+	/** The samples of the finished images. */
+	private static final List<Sample> samples = Collections.synchronizedList(new ArrayList<Sample>());
+	
+	/** Enables the collection of metrics. */
+	public static void enable() {
+		enabled = true;
+	}
+	
+	/** Returns true if metrics are collected. */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	/** Returns a new sample for the given image (or null if the collection is disabled). */
+	public static Sample start(String name) {
+		return enabled ? new Sample(name) : null;
+	}
+	
+	/**
+	 * Per-image metrics of a single analyzation.
+	 *
+	 * @author viktor.adam
+	 */
+	public static class Sample {
+		
+		/** The name of the image. */
+		private final String name;
+		/** The time spent in each stage (in nanoseconds). */
+		private final long[] nanos = new long[Stage.values().length];
+		/** The number of pixels removed by each execution of the Thinning algorithm. */
+		private final List<Long> removed = new ArrayList<>();
+		/** The number of found endings. */
+		private int endings;
+		/** The number of found branches. */
+		private int branches;
+		
+		/** Constructor. */
+		private Sample(String name) {
+			this.name = name;
+		}
+		
+		/** Records an execution of the given stage started at the given time (see {@link System#nanoTime()}). */
+		public void time(Stage stage, long start) {
+			long elapsed = System.nanoTime() - start;
+			
+			nanos[stage.ordinal()] += elapsed;
+			
+			calls[stage.ordinal()].incrementAndGet();
+			totals[stage.ordinal()].addAndGet(elapsed);
+			
+			AtomicLong maximum = maximums[stage.ordinal()];
+			long current;
+			while(elapsed > (current = maximum.get())) {
+				if(maximum.compareAndSet(current, elapsed)) break;
+			}
+		}
+		
+		/** Records the number of pixels removed by an execution of the Thinning algorithm. */
+		public void removed(long pixels) {
+			removed.add(pixels);
+			removedPixels.addAndGet(pixels);
+		}
+		
+		/** Records the number of found minutiae. */
+		public void found(int endings, int branches) {
+			this.endings  = endings;
+			this.branches = branches;
+			
+			Metrics.endings.addAndGet(endings);
+			Metrics.branches.addAndGet(branches);
+		}
+		
+		/** Marks the image finished and keeps its sample for the output. */
+		public void finish() {
+			images.incrementAndGet();
+			samples.add(this);
+		}
+		
+	}
+	
+	/** Writes the collected metrics as <code>metrics.json</code> and <code>metrics.prom</code> (Prometheus text format) into the output directory. */
+	public static void write() {
+		if(!enabled) return;
+		
+		File outputDirectory = new File("output");
+		outputDirectory.mkdir();
+		
+		File json = new File(outputDirectory, "metrics.json");
+		try ( Writer writer = new BufferedWriter(new FileWriter(json)) ) {
+			writeJson(writer);
+		} catch(IOException ex) {
+			Log.error("Failed to write metrics to file", ex);
+		}
+		
+		File prometheus = new File(outputDirectory, "metrics.prom");
+		try ( Writer writer = new BufferedWriter(new FileWriter(prometheus)) ) {
+			writePrometheus(writer);
+		} catch(IOException ex) {
+			Log.error("Failed to write metrics to file", ex);
+		}
+		
+		Log.info("Metrics written: " + json.getPath() + ", " + prometheus.getPath());
+	}
+	
+	/** Writes the aggregates and the per-image samples as JSON. */
+	private static void writeJson(Writer writer) throws IOException {
+		writer.append("{\n");
+		writer.append("  \"images\": ").append(String.valueOf(images.get())).append(",\n");
+		writer.append("  \"thinning_pixels_removed\": ").append(String.valueOf(removedPixels.get())).append(",\n");
+		writer.append("  \"endings\": ").append(String.valueOf(endings.get())).append(",\n");
+		writer.append("  \"branches\": ").append(String.valueOf(branches.get())).append(",\n");
+		
+		writer.append("  \"stages\": {");
+		for(Stage stage : Stage.values()) {
+			int idx = stage.ordinal();
+			writer.append(idx > 0 ? ",\n" : "\n");
+			writer.append("    \"").append(stage.key()).append("\": { ");
+			writer.append("\"count\": ").append(String.valueOf(calls[idx].get())).append(", ");
+			writer.append("\"total_seconds\": ").append(seconds(totals[idx].get())).append(", ");
+			writer.append("\"max_seconds\": ").append(seconds(maximums[idx].get())).append(" }");
+		}
+		writer.append("\n  },\n");
+		
+		writer.append("  \"samples\": [");
+		synchronized(samples) {
+			boolean first = true;
+			for(Sample sample : samples) {
+				writer.append(first ? "\n" : ",\n");
+				first = false;
+				
+				writer.append("    { \"name\": \"").append(escape(sample.name)).append("\"");
+				for(Stage stage : Stage.values()) {
+					writer.append(", \"").append(stage.key()).append("_seconds\": ").append(seconds(sample.nanos[stage.ordinal()]));
+				}
+				writer.append(", \"thinning_removed\": ").append(sample.removed.toString());
+				writer.append(", \"endings\": ").append(String.valueOf(sample.endings));
+				writer.append(", \"branches\": ").append(String.valueOf(sample.branches)).append(" }");
+			}
+		}
+		writer.append("\n  ]\n");
+		writer.append("}\n");
+	}
+	
+	/** Writes the aggregates in the Prometheus text exposition format. */
+	private static void writePrometheus(Writer writer) throws IOException {
+		writer.append("# HELP fingerprint_images_total Number of analyzed images.\n");
+		writer.append("# TYPE fingerprint_images_total counter\n");
+		writer.append("fingerprint_images_total ").append(String.valueOf(images.get())).append('\n');
+		
+		writer.append("# HELP fingerprint_stage_calls_total Number of executions of each stage.\n");
+		writer.append("# TYPE fingerprint_stage_calls_total counter\n");
+		for(Stage stage : Stage.values()) {
+			writer.append("fingerprint_stage_calls_total{stage=\"").append(stage.key()).append("\"} ");
+			writer.append(String.valueOf(calls[stage.ordinal()].get())).append('\n');
+		}
+		
+		writer.append("# HELP fingerprint_stage_seconds_total Time spent in each stage.\n");
+		writer.append("# TYPE fingerprint_stage_seconds_total counter\n");
+		for(Stage stage : Stage.values()) {
+			writer.append("fingerprint_stage_seconds_total{stage=\"").append(stage.key()).append("\"} ");
+			writer.append(seconds(totals[stage.ordinal()].get())).append('\n');
+		}
+		
+		writer.append("# HELP fingerprint_stage_seconds_max Longest execution of each stage.\n");
+		writer.append("# TYPE fingerprint_stage_seconds_max gauge\n");
+		for(Stage stage : Stage.values()) {
+			writer.append("fingerprint_stage_seconds_max{stage=\"").append(stage.key()).append("\"} ");
+			writer.append(seconds(maximums[stage.ordinal()].get())).append('\n');
+		}
+		
+		writer.append("# HELP fingerprint_thinning_pixels_removed_total Number of pixels removed by the Thinning algorithm.\n");
+		writer.append("# TYPE fingerprint_thinning_pixels_removed_total counter\n");
+		writer.append("fingerprint_thinning_pixels_removed_total ").append(String.valueOf(removedPixels.get())).append('\n');
+		
+		writer.append("# HELP fingerprint_minutiae_total Number of found minutiae.\n");
+		writer.append("# TYPE fingerprint_minutiae_total counter\n");
+		writer.append("fingerprint_minutiae_total{type=\"ending\"} ").append(String.valueOf(endings.get())).append('\n');
+		writer.append("fingerprint_minutiae_total{type=\"branch\"} ").append(String.valueOf(branches.get())).append('\n');
+	}
+	
+	/** Returns the given nanoseconds as seconds. */
+	private static String seconds(long nanos) {
+		return String.valueOf(nanos / 1e9);
+	}
+	
+	/** Escapes a string for a JSON string literal. */
+	private static String escape(String value) {
+		StringBuilder builder = new StringBuilder(value.length());
+		for(char ch : value.toCharArray()) {
+			if(ch == '"' || ch == '\\') {
+				builder.append('\\').append(ch);
+			} else if(ch < 0x20) {
+				builder.append(String.format("\\u%04x", (int) ch));
+			} else {
+				builder.append(ch);
+			}
+		}
+		return builder.toString();
+	}
+	
+	/** Creates the given number of counters. */
+	private static AtomicLong[] counters(int count) {
+		AtomicLong[] counters = new AtomicLong[count];
+		for(int idx = 0; idx < count; idx++) {
+			counters[idx] = new AtomicLong();
+		}
+		return counters;
+	}
+	
+}
@@ -0,0 +1,167 @@
+package hu.rycus86.bioid.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Helper class holding the minutiae (endings and branches) found on an image.
+ * 
+ * The minutiae are stored in the order they were added in packed primitive arrays
+ * (coordinates, a type tag and an optional angle for each), so no object is allocated per minutia.
+ * {@link #getEndings()} and {@link #getBranches()} expose the minutiae of a type as read-only lists of points.
+ * 
+ * @author viktor.adam
+ */
+public class Minutiae {
+	
+	/** The type tag of endings. */
+	public static final byte ENDING = 0;
+	/** The type tag of branches. */
+	public static final byte BRANCH = 1;
+	
+	/** The initial capacity of the arrays. */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/** The X coordinates. */
+	private int[] xs;
+	/** The Y coordinates. */
+	private int[] ys;
+	/** The type tags. */
+	private byte[] types;
+	/** The angles (or null if none has been set). */
+	private float[] angles;
+	
+	/** The number of minutiae. */
+	private int size;
+	/** The number of endings. */
+	private int endingCount;
+	
+	/** Constructor for an empty container. */
+	public Minutiae() {
+		this(INITIAL_CAPACITY);
+	}
+	
+	/** Constructor for an empty container with the given initial capacity. */
+	public Minutiae(int capacity) {
+		capacity = Math.max(capacity, 1);
+		
+		this.xs    = new int[capacity];
+		this.ys    = new int[capacity];
+		this.types = new byte[capacity];
+	}
+	
+	/** Constructor copying the given lists (endings first). */
+	public Minutiae(List<Point> endings, List<Point> branches) {
+		this(endings.size() + branches.size());
+		
+		for(Point pt : endings) {
+			add(ENDING, pt.x, pt.y);
+		}
+		
+		for(Point pt : branches) {
+			add(BRANCH, pt.x, pt.y);
+		}
+	}
+	
+	/** Adds a minutia of the given type, returns its index. */
+	public int add(byte type, int x, int y) {
+		if(size == xs.length) {
+			int capacity = size * 2;
+			
+			xs    = Arrays.copyOf(xs, capacity);
+			ys    = Arrays.copyOf(ys, capacity);
+			types = Arrays.copyOf(types, capacity);
+			if(angles != null) angles = grow(angles, capacity);
+		}
+		
+		xs[size]    = x;
+		ys[size]    = y;
+		types[size] = type;
+		if(angles != null) angles[size] = Float.NaN;
+		
+		if(type == ENDING) endingCount++;
+		
+		return size++;
+	}
+	
+	/** Returns the number of minutiae. */
+	public int size() { return size; }
+	/** Returns the number of endings. */
+	public int getEndingCount() { return endingCount; }
+	/** Returns the number of branches. */
+	public int getBranchCount() { return size - endingCount; }
+	
+	/** Returns the X coordinate of the minutia at the given index. */
+	public int getX(int index) { return xs[index]; }
+	/** Returns the Y coordinate of the minutia at the given index. */
+	public int getY(int index) { return ys[index]; }
+	/** Returns the type tag of the minutia at the given index. */
+	public byte getType(int index) { return types[index]; }
+	
+	/** Returns the angle of the minutia at the given index (NaN if it has not been set). */
+	public float getAngle(int index) {
+		return angles != null ? angles[index] : Float.NaN;
+	}
+	
+	/** Sets the angle (in radians) of the minutia at the given index. */
+	public void setAngle(int index, float angle) {
+		if(angles == null) {
+			angles = grow(new float[0], xs.length);
+		}
+		angles[index] = angle;
+	}
+	
+	/** Returns true if the angle of any minutia has been set. */
+	public boolean hasAngles() {
+		return angles != null;
+	}
+	
+	/** Returns a read-only view of the endings as points (in the order they were added). */
+	public List<Point> getEndings() {
+		return new TypeView(ENDING, endingCount);
+	}
+	
+	/** Returns a read-only view of the branches as points (in the order they were added). */
+	public List<Point> getBranches() {
+		return new TypeView(BRANCH, size - endingCount);
+	}
+	
+	/** Returns a copy of the angles extended to the given capacity (new elements are NaN). */
+	private static float[] grow(float[] angles, int capacity) {
+		float[] result = Arrays.copyOf(angles, capacity);
+		Arrays.fill(result, angles.length, capacity, Float.NaN);
+		return result;
+	}
+	
+	/** Read-only list of points of the minutiae of a single type. */
+	private class TypeView extends AbstractList<Point> implements RandomAccess {
+		
+		/** The indexes of the minutiae of the type. */
+		private final int[] indexes;
+		
+		/** Constructor. */
+		TypeView(byte type, int count) {
+			indexes = new int[count];
+			
+			int target = 0;
+			for(int index = 0; index < size && target < count; index++) {
+				if(types[index] == type) indexes[target++] = index;
+			}
+		}
+		
+		/* @see java.util.AbstractList#get(int) */
+		@Override public Point get(int index) {
+			int minutia = indexes[index];
+			return new Point(xs[minutia], ys[minutia]);
+		}
+		
+		/* @see java.util.AbstractCollection#size() */
+		@Override public int size() {
+			return indexes.length;
+		}
+		
+	}
+	
+}
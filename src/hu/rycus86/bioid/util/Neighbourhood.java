@@ -0,0 +1,85 @@
+package hu.rycus86.bioid.util;
+
+/**
+ * Helper class for classifying 3x3 windows by the 8-bit code of their neighbours.
+ * 
+ * Bit <code>k</code> of a neighbour code is set if the <code>k</code>-th neighbour is dark,
+ * the neighbours are numbered in window index order skipping the center
+ * (window indexes 0, 1, 2, 3, 5, 6, 7 and 8).
+ * Masks and rules are compiled once into 256-entry tables indexed by this code.
+ * 
+ * @author viktor.adam
+ */
+public class Neighbourhood {
+	
+	/** The window indexes of the neighbours in the order of their bits. */
+	private static final int[] NEIGHBOURS = new int[] { 0, 1, 2, 3, 5, 6, 7, 8 };
+	
+	/** The number of distinct neighbour codes. */
+	public static final int CODES = 256;
+	
+	/** Returns the neighbour code of a 3x3 window of pixel values. */
+	public static int code(int[] window) {
+		int code = 0;
+		for(int bit = 0; bit < NEIGHBOURS.length; bit++) {
+			if(window[NEIGHBOURS[bit]] == 0x00) code |= 1 << bit;
+		}
+		return code;
+	}
+	
+	/** Returns the neighbour code of the pixel at <code>x</code> of the middle one of three rows of pixel values. */
+	public static int code(int[] above, int[] row, int[] below, int x) {
+		int code = 0;
+		if(above[x - 1] == 0x00) code |= 0x01;
+		if(above[x] 	== 0x00) code |= 0x02;
+		if(above[x + 1] == 0x00) code |= 0x04;
+		if(row[x - 1] 	== 0x00) code |= 0x08;
+		if(row[x + 1] 	== 0x00) code |= 0x10;
+		if(below[x - 1] == 0x00) code |= 0x20;
+		if(below[x] 	== 0x00) code |= 0x40;
+		if(below[x + 1] == 0x00) code |= 0x80;
+		return code;
+	}
+	
+	/** Returns the neighbour code of a 9-bit window code (see {@link BinaryImage#window(int, int)}). */
+	public static int code(int window) {
+		return (window & 0x0F) | ((window >>> 1) & 0xF0);
+	}
+	
+	/** Returns the 3x3 window of pixel values with a dark center for the given neighbour code. */
+	public static int[] window(int code) {
+		int[] window = new int[9];
+		for(int bit = 0; bit < NEIGHBOURS.length; bit++) {
+			window[NEIGHBOURS[bit]] = (code & (1 << bit)) != 0 ? 0x00 : 0xFF;
+		}
+		window[4] = 0x00;
+		return window;
+	}
+	
+	/** Compiles the given mask into a table telling which neighbour codes of a dark pixel match it. */
+	public static boolean[] compile(int[] mask) {
+		boolean[] table = new boolean[CODES];
+		for(int code = 0; code < CODES; code++) {
+			table[code] = Util.matches(window(code), mask);
+		}
+		return table;
+	}
+	
+	/** Compiles the given masks into a table holding the index of the first mask matching a dark pixel (or -1). */
+	public static byte[] compile(int[][] masks) {
+		byte[] table = new byte[CODES];
+		for(int code = 0; code < CODES; code++) {
+			int[] window = window(code);
+			
+			table[code] = -1;
+			for(int idx = 0; idx < masks.length; idx++) {
+				if(Util.matches(window, masks[idx])) {
+					table[code] = (byte) idx;
+					break;
+				}
+			}
+		}
+		return table;
+	}
+	
+}
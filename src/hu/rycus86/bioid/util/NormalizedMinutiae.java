@@ -0,0 +1,93 @@
+package hu.rycus86.bioid.util;
+
+import java.util.List;
+
+/**
+ * Helper class holding the coordinates of minutiae normalized to the bounding box of all of them.
+ * 
+ * A coordinate is <code>(value - minimum) / length</code> of the interval of all endings and branches
+ * on the same axis, so the minutiae of any image fall into the unit square.
+ * The endings come first in the arrays, followed by the branches.
+ * 
+ * @author viktor.adam
+ */
+public class NormalizedMinutiae {
+	
+	/** The normalized X coordinates. */
+	private final double[] x;
+	/** The normalized Y coordinates. */
+	private final double[] y;
+	/** The normalized X coordinates in single precision (compared by the matcher). */
+	private final float[] fx;
+	/** The normalized Y coordinates in single precision (compared by the matcher). */
+	private final float[] fy;
+	/** The number of endings (at the beginning of the arrays). */
+	private final int endings;
+	
+	/** The horizontal interval of the original coordinates. */
+	private final Interval ix = new Interval();
+	/** The vertical interval of the original coordinates. */
+	private final Interval iy = new Interval();
+	
+	/** Constructor. */
+	public NormalizedMinutiae(List<Point> endings, List<Point> branches) {
+		this(new Minutiae(endings, branches));
+	}
+	
+	/** Constructor. */
+	public NormalizedMinutiae(Minutiae minutiae) {
+		int count = minutiae.size();
+		
+		for(int index = 0; index < count; index++) {
+			ix.process(minutiae.getX(index));
+			iy.process(minutiae.getY(index));
+		}
+		
+		this.endings = minutiae.getEndingCount();
+		this.x  = new double[count];
+		this.y  = new double[count];
+		this.fx = new float[count];
+		this.fy = new float[count];
+		
+		double width  = ix.getLength();
+		double height = iy.getLength();
+		
+		// the endings come first, both types keep their order
+		int ending = 0;
+		int branch = this.endings;
+		for(int index = 0; index < count; index++) {
+			int idx = minutiae.getType(index) == Minutiae.ENDING ? ending++ : branch++;
+			
+			x[idx] = (minutiae.getX(index) - ix.getMinimum()) / width;
+			y[idx] = (minutiae.getY(index) - iy.getMinimum()) / height;
+			
+			fx[idx] = (float) x[idx];
+			fy[idx] = (float) y[idx];
+		}
+	}
+	
+	/** Returns the normalized X coordinates. */
+	public double[] getX() { return x; }
+	/** Returns the normalized Y coordinates. */
+	public double[] getY() { return y; }
+	/** Returns the normalized X coordinates in single precision. */
+	public float[] getFloatX() { return fx; }
+	/** Returns the normalized Y coordinates in single precision. */
+	public float[] getFloatY() { return fy; }
+	
+	/** Returns the number of endings (at the beginning of the arrays). */
+	public int getEndingCount() { return endings; }
+	/** Returns the number of all minutiae. */
+	public int getCount() { return x.length; }
+	
+	/** Returns the horizontal interval of the original coordinates. */
+	public Interval getHorizontalInterval() { return ix; }
+	/** Returns the vertical interval of the original coordinates. */
+	public Interval getVerticalInterval() { return iy; }
+	
+	/** Returns true if the bounding box has no area (so the coordinates can not be normalized). */
+	public boolean isDegenerate() {
+		return ix.getLength() == 0 || iy.getLength() == 0;
+	}
+	
+}
@@ -0,0 +1,167 @@
+package hu.rycus86.bioid.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+
+/**
+ * Helper class streaming the textual sections of the output file straight to a writer.
+ * 
+ * The ratios are written with 5 fraction digits using the decimal separator and digits of the default locale
+ * without formatting them to strings first. Values the fixed-point formatting does not cover
+ * (NaN, negative or large ones, and the ones too close to a rounding tie to be sure how {@link NumberFormat}
+ * rounds them) are written by a {@link NumberFormat}, so the output is the same as formatting all of them.
+ * 
+ * @author viktor.adam
+ */
+public class RateListWriter {
+	
+	/** The line separator of the output. */
+	private static final String NEWLINE = System.getProperty("line.separator");
+	
+	/** Header of the rate list of endings. */
+	private static final String ENDINGS_HEADER  = NEWLINE + "---------- ENDINGS  --------->";
+	/** Footer of the rate list of endings. */
+	private static final String ENDINGS_FOOTER  = NEWLINE + "<--------- ENDINGS  ----------";
+	/** Header of the rate list of branches. */
+	private static final String BRANCHES_HEADER = NEWLINE + "---------- BRANCHES --------->";
+	/** Footer of the rate list of branches. */
+	private static final String BRANCHES_FOOTER = NEWLINE + "<--------- BRANCHES ----------";
+	
+	/** The number of fraction digits of the ratios. */
+	private static final int FRACTION_DIGITS = 5;
+	/** The ratios multiplied by this are rounded to integers. */
+	private static final double SCALE = 100000.0;
+	/** The ratios below this are written by the fixed-point formatting (there is no grouping separator below it). */
+	private static final double FIXED_LIMIT = 100.0;
+	/** Scaled ratios closer to a half than this are written by the fallback format. */
+	private static final double TIE_MARGIN = 1e-6;
+	
+	/** The target writer. */
+	private final Writer writer;
+	
+	/** The decimal separator of the default locale. */
+	private final char decimalSeparator;
+	/** The zero digit of the default locale. */
+	private final char zeroDigit;
+	
+	/** Buffer for the characters of a single number. */
+	private final char[] buffer = new char[24];
+	
+	/** Formats the values the fixed-point formatting does not cover (created when first needed). */
+	private NumberFormat fallback;
+	
+	/** Constructor. */
+	public RateListWriter(Writer writer) {
+		this.writer = writer;
+		
+		DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance();
+		this.decimalSeparator = symbols.getDecimalSeparator();
+		this.zeroDigit        = symbols.getZeroDigit();
+	}
+	
+	/** Writes the <code>KEY: x ; y</code> lines of the minutiae of the given type. */
+	public void writeCoordinates(String key, Minutiae minutiae, byte type) throws IOException {
+		for(int index = 0; index < minutiae.size(); index++) {
+			if(minutiae.getType(index) != type) continue;
+			
+			writer.write(key);
+			writer.write(": ");
+			writeInteger(minutiae.getX(index));
+			writer.write(" ; ");
+			writeInteger(minutiae.getY(index));
+			writer.write(NEWLINE);
+		}
+	}
+	
+	/** Computes and writes the rate list for endings and branches (see {@link Util#createRateListInfo(Minutiae)}). */
+	public void writeRateList(Minutiae minutiae) throws IOException {
+		NormalizedMinutiae normalized = new NormalizedMinutiae(minutiae);
+		
+		double[] xs = normalized.getX();
+		double[] ys = normalized.getY();
+		
+		if(minutiae.getEndingCount() > 0) {
+			writeSection(ENDINGS_HEADER, ENDINGS_FOOTER, 'e', xs, ys, 0, minutiae.getEndingCount());
+		}
+		
+		if(minutiae.getBranchCount() > 0) {
+			writeSection(BRANCHES_HEADER, BRANCHES_FOOTER, 'b', xs, ys, minutiae.getEndingCount(), minutiae.getBranchCount());
+		}
+	}
+	
+	/** Writes a section of the rate list with 5 ratio pairs in a line. */
+	private void writeSection(String header, String footer, char type, double[] xs, double[] ys, int offset, int count) throws IOException {
+		writer.write(header);
+		
+		for(int index = 0; index < count; index++) {
+			if(index % 5 == 0) writer.write(NEWLINE);
+			
+			writeRatio(xs[offset + index]);
+			writer.write('x');
+			writeRatio(ys[offset + index]);
+			writer.write(type);
+			writer.write(' ');
+		}
+		
+		writer.write(footer);
+	}
+	
+	/** Writes a ratio with 5 fraction digits. */
+	private void writeRatio(double value) throws IOException {
+		double scaled = value * SCALE;
+		
+		// NumberFormat rounds the shortest decimal representation, which may be a tie even if the value is not
+		if(!(value >= 0.0 && value < FIXED_LIMIT) || Math.abs(scaled - Math.floor(scaled) - 0.5) < TIE_MARGIN) {
+			writer.write(fallback().format(value));
+			return;
+		}
+		
+		long rounded = Math.round(scaled);
+		long integer = rounded / (long) SCALE;
+		long digits  = rounded % (long) SCALE;
+		
+		int position = buffer.length;
+		for(int idx = 0; idx < FRACTION_DIGITS; idx++) {
+			buffer[--position] = (char) (zeroDigit + digits % 10);
+			digits /= 10;
+		}
+		
+		buffer[--position] = decimalSeparator;
+		
+		do {
+			buffer[--position] = (char) (zeroDigit + integer % 10);
+			integer /= 10;
+		} while(integer > 0);
+		
+		writer.write(buffer, position, buffer.length - position);
+	}
+	
+	/** Writes an integer the way string concatenation does. */
+	private void writeInteger(int value) throws IOException {
+		if(value < 0) {
+			writer.write(Integer.toString(value));
+			return;
+		}
+		
+		int position = buffer.length;
+		do {
+			buffer[--position] = (char) ('0' + value % 10);
+			value /= 10;
+		} while(value > 0);
+		
+		writer.write(buffer, position, buffer.length - position);
+	}
+	
+	/** Returns the format for the values the fixed-point formatting does not cover. */
+	private NumberFormat fallback() {
+		if(fallback == null) {
+			fallback = NumberFormat.getNumberInstance();
+			fallback.setMinimumFractionDigits(FRACTION_DIGITS);
+			fallback.setMaximumFractionDigits(FRACTION_DIGITS);
+		}
+		return fallback;
+	}
+	
+}
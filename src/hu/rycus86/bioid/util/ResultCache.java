@@ -0,0 +1,274 @@
+package hu.rycus86.bioid.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * On-disk cache of analyzation results keyed by the content of the image and the parameters of the analyzation.
+ * 
+ * Each entry is a file named by the SHA-256 hash of the image bytes and the parameters, holding the deflated
+ * thinned skeleton and the minutiae as a {@link Template} record:
+ * <pre>
+ *   magic (4 bytes, "FPRC") | version (1 byte) | width | height | skeleton words | template record
+ * </pre>
+ * Entries are written to a temporary file first and renamed, so concurrent readers never see partial ones
+ * (temporary files left behind by a process that died are deleted when the cache is opened).
+ * When the total size of the entries exceeds the limit, the least recently used ones are deleted
+ * (the last access is kept as the modification time of the files, so the order survives between runs).
+ * 
+ * @author viktor.adam
+ */
+public class ResultCache {
+	
+	/** The magic number starting each entry. */
+	private static final int MAGIC = 0x46505243;
+	/** The current version of the format. */
+	private static final int VERSION = 1;
+	
+	/** The extension of the entry files. */
+	private static final String EXTENSION = ".fpc";
+	/** The extension of the entry files being written. */
+	private static final String TEMPORARY = ".tmp";
+	/** The age above which a file being written is left behind by a process that died (in milliseconds). */
+	private static final long STALE_AGE = TimeUnit.HOURS.toMillis(1);
+	
+	/** The directory holding the entries. */
+	private final File directory;
+	/** The maximum total size of the entries (in bytes). */
+	private final long maxSize;
+	
+	/** The size of the entries in access order (least recently used first). */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/** The total size of the entries (in bytes). */
+	private long totalSize;
+	
+	/** The number of results found in the cache. */
+	private final AtomicLong hits = new AtomicLong();
+	/** The number of results not found in the cache. */
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * A cached result of an analyzation.
+	 *
+	 * @author viktor.adam
+	 */
+	public static class Result {
+		
+		/** The thinned skeleton. */
+		private final BinaryImage skeleton;
+		/** The endings and branches. */
+		private final Minutiae minutiae;
+		
+		/** Constructor. */
+		Result(BinaryImage skeleton, Minutiae minutiae) {
+			this.skeleton = skeleton;
+			this.minutiae = minutiae;
+		}
+		
+		/** Returns the thinned skeleton. */
+		public BinaryImage getSkeleton() { return skeleton; }
+		/** Returns the endings and branches. */
+		public Minutiae getMinutiae() { return minutiae; }
+		
+	}
+	
+	/** Opens (or creates) the cache in the given directory, evicting entries above the given total size. */
+	public ResultCache(File directory, long maxSize) throws IOException {
+		this.directory = directory;
+		this.maxSize   = maxSize;
+		
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed to create cache directory: " + directory);
+		}
+		
+		File[] files = directory.listFiles();
+		if(files == null) files = new File[0];
+		
+		// the least recently used entries come first
+		Arrays.sort(files, new Comparator<File>() {
+			/* @see java.util.Comparator#compare(java.lang.Object, java.lang.Object) */
+			@Override public int compare(File f1, File f2) {
+				return Long.compare(f1.lastModified(), f2.lastModified());
+			}
+		});
+		
+		synchronized(entries) {
+			for(File file : files) {
+				String name = file.getName();
+				if(name.endsWith(EXTENSION) && file.isFile()) {
+					entries.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+					totalSize += file.length();
+				} else if(name.endsWith(TEMPORARY) && file.lastModified() < System.currentTimeMillis() - STALE_AGE) {
+					file.delete();
+				}
+			}
+			
+			evict();
+		}
+	}
+	
+	/** Returns the key of the given image file analyzed with the given parameters. */
+	public String key(File image, String parameters) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		
+		byte[] buffer = new byte[64 * 1024];
+		try ( InputStream stream = new FileInputStream(image) ) {
+			int read;
+			while((read = stream.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		
+		digest.update((byte) 0);
+		digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+		
+		StringBuilder key = new StringBuilder(64);
+		for(byte b : digest.digest()) {
+			key.append(Character.forDigit((b >>> 4) & 0x0F, 16));
+			key.append(Character.forDigit(b & 0x0F, 16));
+		}
+		return key.toString();
+	}
+	
+	/** Returns the cached result for the given key (or null if it is not cached). */
+	public Result get(String key) {
+		synchronized(entries) {
+			if(entries.get(key) == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+		}
+		
+		File file = new File(directory, key + EXTENSION);
+		
+		try ( DataInputStream stream = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(file)))) ) {
+			if(stream.readInt() != MAGIC || stream.readUnsignedByte() != VERSION) {
+				throw new IOException("Unsupported cache entry: " + file);
+			}
+			
+			BinaryImage skeleton = new BinaryImage(stream.readInt(), stream.readInt());
+			
+			long[] words = skeleton.getWords();
+			for(int index = 0; index < words.length; index++) {
+				words[index] = stream.readLong();
+			}
+			
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while((read = stream.read(buffer)) > 0) {
+				record.write(buffer, 0, read);
+			}
+			
+			Template template = Template.read(ByteBuffer.wrap(record.toByteArray()));
+			
+			file.setLastModified(System.currentTimeMillis());
+			hits.incrementAndGet();
+			
+			return new Result(skeleton, template.getMinutiae());
+		} catch(FileNotFoundException ex) {
+			// evicted by another thread since the lookup
+			misses.incrementAndGet();
+			return null;
+		} catch(IOException | RuntimeException ex) {
+			Log.error("Failed to read cache entry, dropping it: " + file, ex);
+			remove(key);
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+	
+	/** Stores the result of an analyzation with the given key. */
+	public void put(String key, BinaryImage skeleton, Minutiae minutiae) {
+		File file = new File(directory, key + EXTENSION);
+		
+		try {
+			File temporary = File.createTempFile(key, TEMPORARY, directory);
+			
+			try ( DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(temporary)))) ) {
+				stream.writeInt(MAGIC);
+				stream.writeByte(VERSION);
+				stream.writeInt(skeleton.getWidth());
+				stream.writeInt(skeleton.getHeight());
+				
+				for(long word : skeleton.getWords()) {
+					stream.writeLong(word);
+				}
+				
+				new Template("", minutiae).write(stream);
+			} catch(IOException ex) {
+				temporary.delete();
+				throw ex;
+			}
+			
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException ex) {
+			Log.error("Failed to write cache entry: " + file, ex);
+			return;
+		}
+		
+		synchronized(entries) {
+			Long previous = entries.put(key, file.length());
+			totalSize += file.length() - (previous != null ? previous : 0L);
+			
+			evict();
+		}
+	}
+	
+	/** Logs the number of hits and misses. */
+	public void report() {
+		Log.info("Result cache: " + hits.get() + " hit(s), " + misses.get() + " miss(es)");
+	}
+	
+	/** Drops the entry with the given key. */
+	private void remove(String key) {
+		synchronized(entries) {
+			Long size = entries.remove(key);
+			if(size != null) totalSize -= size;
+		}
+		
+		new File(directory, key + EXTENSION).delete();
+	}
+	
+	/** Deletes the least recently used entries while the total size is above the limit (the caller holds the lock). */
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+		while(totalSize > maxSize && iterator.hasNext()) {
+			Map.Entry<String, Long> eldest = iterator.next();
+			
+			new File(directory, eldest.getKey() + EXTENSION).delete();
+			totalSize -= eldest.getValue();
+			iterator.remove();
+		}
+	}
+	
+}
@@ -0,0 +1,174 @@
+package hu.rycus86.bioid.util;
+
+import java.awt.image.Raster;
+
+/**
+ * Helper class for following ridges on a thinned image without allocations.
+ * 
+ * Each thread has its own instance (see {@link #get()}) holding a small visited buffer
+ * that is searched linearly, which is cheaper than hashing for the few pixels
+ * a single trace can visit.
+ * 
+ * @author viktor.adam
+ */
+public class RidgeTracer {
+	
+	/** The tracer of the current thread. */
+	private static final ThreadLocal<RidgeTracer> tracer = new ThreadLocal<RidgeTracer>() {
+		/* @see java.lang.ThreadLocal#initialValue() */
+		@Override protected RidgeTracer initialValue() { return new RidgeTracer(); }
+	};
+	
+	/** The X offsets of the neighbours in the order they are checked. */
+	private static final int[] shx = new int[] { +0, +0, -1, +1, -1, -1, +1, +1 };
+	/** The Y offsets of the neighbours in the order they are checked. */
+	private static final int[] shy = new int[] { -1, +1, +0, +0, -1, +1, -1, +1 };
+	
+	/** The X coordinates of the visited pixels. */
+	private int[] visitedX = new int[32];
+	/** The Y coordinates of the visited pixels. */
+	private int[] visitedY = new int[32];
+	/** The number of visited pixels. */
+	private int visitedCount;
+	
+	/** Buffer for a 3x3 window. */
+	private final int[] window = new int[9];
+	
+	/** Returns the tracer of the current thread. */
+	public static RidgeTracer get() {
+		return tracer.get();
+	}
+	
+	/**
+	 * Returns the length of the branch starting at (x1, y1) going to (x2, y2).
+	 * @param x1 The initial X coordinate
+	 * @param y1 The initial Y coordinate
+	 * @param x2 The next X coordinate
+	 * @param y2 The next Y coordinate
+	 * @param raster Raster object holding the image data
+	 * @param limit Maximum number of steps to take
+	 * @param initMask The initial mask/kernel that initiated this computation
+	 */
+	public int branchLength(int x1, int y1, int x2, int y2, Raster raster, int limit, int[] initMask) {
+		start(x1, y1, limit, initMask);
+		
+		int width  = raster.getWidth();
+		int height = raster.getHeight();
+		
+		int moves = 0;
+		
+		boolean foundNext = false;
+		
+		do {
+			visit(x2, y2);
+			foundNext = false;
+			
+			if(x2 <= 0 || y2 <= 0) break;
+			if(x2 + 1 >= width) break;
+			if(y2 + 1 >= height) break;
+			
+			raster.getPixels(x2 - 1, y2 - 1, 3, 3, window);
+			
+			for(int i = 0; i < shx.length; i++) {
+				int cx = shx[i];
+				int cy = shy[i];
+				
+				if(window[4 + cx + cy * 3] != 0x00) continue;
+				if(isVisited(x2 + cx, y2 + cy)) continue;
+				
+				x2 = x2 + cx;
+				y2 = y2 + cy;
+				
+				foundNext = true;
+				moves++;
+				break;
+			}
+		} while(foundNext && moves < limit);
+		
+		return moves;
+	}
+	
+	/**
+	 * Returns the length of the branch starting at (x1, y1) going to (x2, y2) on a bit-packed image.
+	 * @param x1 The initial X coordinate
+	 * @param y1 The initial Y coordinate
+	 * @param x2 The next X coordinate
+	 * @param y2 The next Y coordinate
+	 * @param image The bit-packed image data
+	 * @param limit Maximum number of steps to take
+	 * @param initMask The initial mask/kernel that initiated this computation
+	 */
+	public int branchLength(int x1, int y1, int x2, int y2, BinaryImage image, int limit, int[] initMask) {
+		start(x1, y1, limit, initMask);
+		
+		int width  = image.getWidth();
+		int height = image.getHeight();
+		
+		int moves = 0;
+		
+		boolean foundNext = false;
+		
+		do {
+			visit(x2, y2);
+			foundNext = false;
+			
+			if(x2 <= 0 || y2 <= 0) break;
+			if(x2 + 1 >= width) break;
+			if(y2 + 1 >= height) break;
+			
+			int code = image.window(x2, y2);
+			
+			for(int i = 0; i < shx.length; i++) {
+				int cx = shx[i];
+				int cy = shy[i];
+				
+				if((code & (1 << (4 + cx + cy * 3))) == 0) continue;
+				if(isVisited(x2 + cx, y2 + cy)) continue;
+				
+				x2 = x2 + cx;
+				y2 = y2 + cy;
+				
+				foundNext = true;
+				moves++;
+				break;
+			}
+		} while(foundNext && moves < limit);
+		
+		return moves;
+	}
+	
+	/** Resets the visited buffer to the initial pixel and the dark pixels of the initial mask around it. */
+	private void start(int x1, int y1, int limit, int[] initMask) {
+		// the initial pixel, its 8 neighbours and every step (plus the last one) at most
+		int capacity = limit + 11;
+		if(visitedX.length < capacity) {
+			visitedX = new int[capacity];
+			visitedY = new int[capacity];
+		}
+		
+		visitedCount = 0;
+		visit(x1, y1);
+		
+		for(int idx = 0; idx < 9; idx++) {
+			if(idx != 4 && initMask[idx] == 0x00) { // skip zeros in initial mask
+				visit(x1 + (idx % 3) - 1, y1 + (idx / 3) - 1);
+			}
+		}
+	}
+	
+	/** Adds the given pixel to the visited ones. */
+	private void visit(int x, int y) {
+		visitedX[visitedCount] = x;
+		visitedY[visitedCount] = y;
+		visitedCount++;
+	}
+	
+	/** Returns true if the given pixel has already been visited. */
+	private boolean isVisited(int x, int y) {
+		for(int idx = 0; idx < visitedCount; idx++) {
+			if(visitedX[idx] == x && visitedY[idx] == y) return true;
+		}
+		return false;
+	}
+	
+}
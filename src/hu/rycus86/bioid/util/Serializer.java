@@ -1,11 +1,16 @@
 package hu.rycus86.bioid.util;
 
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
+
+import javax.imageio.ImageIO;
 
 /**
  * Helper class for serializing fingerprint analyzation results.
@@ -27,10 +32,9 @@ public class Serializer {
 	 * Writes out the results of an analyzation to a given file.
 	 * @param sourcePath The path of the source image
 	 * @param outputName A base name for the output file
-	 * @param endings The list of endings found during the analyzation
-	 * @param branches The list of branches found during the analyzation
+	 * @param minutiae The endings and branches found during the analyzation
 	 */
-	public static void write(String sourcePath, String outputName, List<Point> endings, List<Point> branches) {
+	public static void write(String sourcePath, String outputName, Minutiae minutiae) {
 		File outputDirectory = new File("output");
 		outputDirectory.mkdir();
 		
@@ -43,6 +47,8 @@ public class Serializer {
 		File outputFile = new File(outputDirectory, filename);
 		
 		try ( BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile)) ) {
+			RateListWriter rateListWriter = new RateListWriter(writer);
+			
 			writer.append(KEY_RUN_DATE).append(": ");
 			writer.append(dateFormat.format(new Date()));
 			writer.newLine();
@@ -51,28 +57,63 @@ public class Serializer {
 			writer.append(source);
 			writer.newLine();
 			
-			if(!endings.isEmpty()) writer.newLine();
+			if(minutiae.getEndingCount() > 0) writer.newLine();
 			
-			for(Point pt : endings) {
-				writer.append(KEY_ENDING).append(": ");
-				writer.append(pt.x + " ; " + pt.y);
-				writer.newLine();
-			}
+			rateListWriter.writeCoordinates(KEY_ENDING, minutiae, Minutiae.ENDING);
 			
-			if(!branches.isEmpty()) writer.newLine();
+			if(minutiae.getBranchCount() > 0) writer.newLine();
 			
-			for(Point pt : branches) {
-				writer.append(KEY_BRANCH).append(": ");
-				writer.append(pt.x + " ; " + pt.y);
-				writer.newLine();
-			}
+			rateListWriter.writeCoordinates(KEY_BRANCH, minutiae, Minutiae.BRANCH);
 			
-			writer.append( Util.createRateListInfo(endings, branches) );
+			rateListWriter.writeRateList(minutiae);
 		} catch(Exception ex) {
 			Log.error("Failed to write analyzation results to file", ex);
 		}
 		
-		Log.info("Output file written: " + outputFile.getPath());
+		Log.info(() -> "Output file written: " + outputFile.getPath());
+	}
+	
+	/**
+	 * Writes out the results of an analyzation as a binary template (see {@link Template}) to a given file.
+	 * @param sourcePath The path of the source image
+	 * @param outputName A base name for the output file
+	 * @param minutiae The endings and branches found during the analyzation
+	 */
+	public static void writeTemplate(String sourcePath, String outputName, Minutiae minutiae) {
+		File outputDirectory = new File("output");
+		outputDirectory.mkdir();
+		
+		String source = new File(sourcePath).getAbsolutePath();
+		
+		File outputFile = new File(outputDirectory, outputName + ".fpt");
+		
+		try ( OutputStream stream = new BufferedOutputStream(new FileOutputStream(outputFile)) ) {
+			new Template(source, minutiae).write(stream);
+		} catch(Exception ex) {
+			Log.error("Failed to write template to file", ex);
+		}
+		
+		Log.info(() -> "Template file written: " + outputFile.getPath());
+	}
+	
+	/**
+	 * Writes out an (annotated) image of an analyzation as PNG.
+	 * @param outputName A base name for the output file
+	 * @param image The image to write
+	 */
+	public static void writeImage(String outputName, BufferedImage image) {
+		File outputDirectory = new File("output");
+		outputDirectory.mkdir();
+		
+		File outputFile = new File(outputDirectory, outputName + ".png");
+		
+		try {
+			ImageIO.write(image, "png", outputFile);
+		} catch(Exception ex) {
+			Log.error("Failed to write image to file", ex);
+		}
+		
+		Log.info(() -> "Image file written: " + outputFile.getPath());
 	}
 	
 }
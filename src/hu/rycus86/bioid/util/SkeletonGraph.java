@@ -0,0 +1,489 @@
+package hu.rycus86.bioid.util;
+
+import java.util.Arrays;
+
+/**
+ * Graph of the ridges of a thinned image, built by tracing the skeleton once.
+ * 
+ * The pixels of the skeleton are classified by their crossing number (the number of separate runs of dark
+ * pixels around them): endings have one run, ridge pixels two and junctions three or more.
+ * The nodes of the graph are the endings, the 8-connected groups of junction pixels and the isolated pixels,
+ * the edges are the ridge segments between them with their lengths in steps
+ * (closed ridges without any node are edges without end nodes).
+ * Only the range the thinning processes (<code>[1, width - 3] x [1, height - 3]</code>) is part of the graph,
+ * the frame the thinning leaves dark around it would join every ridge reaching the border into a single node.
+ * Every pixel of the skeleton is labelled with its node or edge, so the queries
+ * (arm lengths, spurs, ridge counts) never walk the ridges again.
+ * 
+ * @author viktor.adam
+ */
+public class SkeletonGraph {
+	
+	/** The type of endings. */
+	public static final byte ENDING = 0;
+	/** The type of junctions. */
+	public static final byte JUNCTION = 1;
+	/** The type of isolated pixels. */
+	public static final byte ISOLATED = 2;
+	/** The type of the pixels inside ridge segments (never a node). */
+	private static final byte RIDGE = -1;
+	
+	/** The X offsets of the neighbours in the order they are followed (direct neighbours first). */
+	private static final int[] shx = new int[] { +0, +0, -1, +1, -1, -1, +1, +1 };
+	/** The Y offsets of the neighbours in the order they are followed (direct neighbours first). */
+	private static final int[] shy = new int[] { -1, +1, +0, +0, -1, +1, -1, +1 };
+	
+	/** The bits of the neighbour code (see {@link Neighbourhood}) around a pixel clockwise from the top. */
+	private static final int[] RING = new int[] { 1, 2, 4, 7, 6, 5, 3, 0 };
+	
+	/** The type of a dark pixel for each neighbour code. */
+	private static final byte[] types = new byte[Neighbourhood.CODES];
+	static {
+		for(int code = 0; code < Neighbourhood.CODES; code++) {
+			int crossings = 0;
+			for(int idx = 0; idx < RING.length; idx++) {
+				boolean dark = (code & (1 << RING[idx])) != 0;
+				boolean next = (code & (1 << RING[(idx + 1) % RING.length])) != 0;
+				if(!dark && next) crossings++;
+			}
+			
+			if(code == 0) {
+				types[code] = ISOLATED;
+			} else if(crossings == 1) {
+				types[code] = ENDING;
+			} else if(crossings == 2) {
+				types[code] = RIDGE;
+			} else {
+				// three or more runs (or a pixel surrounded by dark ones)
+				types[code] = JUNCTION;
+			}
+		}
+	}
+	
+	/** The marker of the ridge pixels not labelled yet. */
+	private static final int UNLABELLED = Integer.MIN_VALUE;
+	/** The marker of the node pixels not labelled yet (plus their type). */
+	private static final int NODE_PIXEL = Integer.MIN_VALUE + 1;
+	
+	/** The bits of the neighbour code on the left, right, top and bottom of the window. */
+	private static final int LEFT = 0x29, RIGHT = 0x94, TOP = 0x07, BOTTOM = 0xE0;
+	
+	/** The width of the image. */
+	private final int width;
+	/** The height of the image. */
+	private final int height;
+	
+	/** The width of the labels (the image is padded with a white pixel on each side). */
+	private final int span;
+	/** The offsets of the neighbours in the labels in the order they are followed. */
+	private final int[] offsets;
+	
+	/**
+	 * The node (as <code>n + 1</code>) or the edge (as <code>-(e + 1)</code>) of each pixel
+	 * (0 for the background), row by row with the padding.
+	 */
+	private final int[] labels;
+	
+	/** The number of nodes. */
+	private int nodeCount;
+	/** The X coordinates of the nodes (the first pixel of junctions in row-major order). */
+	private int[] nodeX = new int[64];
+	/** The Y coordinates of the nodes. */
+	private int[] nodeY = new int[64];
+	/** The types of the nodes. */
+	private byte[] nodeTypes = new byte[64];
+	
+	/** The pixels (their index in the labels) of all nodes, the ones of each node together. */
+	private int[] nodePixels = new int[64];
+	/** The first pixel of each node in {@link #nodePixels} (with the total count at the end). */
+	private int[] pixelOffsets = new int[65];
+	
+	/** The number of edges. */
+	private int edgeCount;
+	/** The node each edge starts at (or -1). */
+	private int[] edgeFrom = new int[64];
+	/** The node each edge ends at (or -1). */
+	private int[] edgeTo = new int[64];
+	/** The length of each edge in steps from its first node to its last one. */
+	private int[] edgeLengths = new int[64];
+	
+	/** The first edge of each node in {@link #nodeEdges} (with the total count at the end). */
+	private int[] edgeOffsets;
+	/** The edges of all nodes, the ones of each node together (a loop is there twice). */
+	private int[] nodeEdges;
+	
+	/** Constructor. */
+	private SkeletonGraph(int width, int height) {
+		this.width  = width;
+		this.height = height;
+		this.span 	= width + 2;
+		this.labels = new int[span * (height + 2)];
+		
+		this.offsets = new int[shx.length];
+		for(int dir = 0; dir < shx.length; dir++) {
+			offsets[dir] = shy[dir] * span + shx[dir];
+		}
+	}
+	
+	/** Builds the graph of the given thinned image. */
+	public static SkeletonGraph build(BinaryImage skeleton) {
+		SkeletonGraph graph = new SkeletonGraph(skeleton.getWidth(), skeleton.getHeight());
+		
+		int[] pixels = graph.mark(skeleton);
+		graph.findNodes(pixels);
+		graph.traceEdges(pixels);
+		graph.link();
+		
+		return graph;
+	}
+	
+	/** Returns the width of the image. */
+	public int getWidth() { return width; }
+	/** Returns the height of the image. */
+	public int getHeight() { return height; }
+	
+	/** Returns the number of nodes. */
+	public int getNodeCount() { return nodeCount; }
+	/** Returns the X coordinate of the given node. */
+	public int getNodeX(int node) { return nodeX[node]; }
+	/** Returns the Y coordinate of the given node. */
+	public int getNodeY(int node) { return nodeY[node]; }
+	/** Returns the type of the given node. */
+	public byte getNodeType(int node) { return nodeTypes[node]; }
+	/** Returns the number of edges of the given node (loops are counted twice). */
+	public int getDegree(int node) { return edgeOffsets[node + 1] - edgeOffsets[node]; }
+	/** Returns the <code>k</code>-th edge of the given node. */
+	public int getEdge(int node, int k) { return nodeEdges[edgeOffsets[node] + k]; }
+	
+	/** Returns the number of edges. */
+	public int getEdgeCount() { return edgeCount; }
+	/** Returns the node the given edge starts at (or -1). */
+	public int getEdgeFrom(int edge) { return edgeFrom[edge]; }
+	/** Returns the node the given edge ends at (or -1). */
+	public int getEdgeTo(int edge) { return edgeTo[edge]; }
+	/** Returns the length of the given edge in steps. */
+	public int getEdgeLength(int edge) { return edgeLengths[edge]; }
+	
+	/** Returns the node at the other end of the given edge of a node. */
+	public int getOther(int edge, int node) {
+		return edgeFrom[edge] == node ? edgeTo[edge] : edgeFrom[edge];
+	}
+	
+	/** Returns true if the given edge connects an ending with a junction and is shorter than the given length. */
+	public boolean isSpur(int edge, int minLength) {
+		if(edgeLengths[edge] >= minLength) return false;
+		
+		int from = edgeFrom[edge];
+		int to   = edgeTo[edge];
+		if(from < 0 || to < 0) return false;
+		
+		return nodeTypes[from] == ENDING && nodeTypes[to] == JUNCTION
+			|| nodeTypes[from] == JUNCTION && nodeTypes[to] == ENDING;
+	}
+	
+	/** Returns the number of arms of the given node that are not spurs shorter than the given length. */
+	public int getArmCount(int node, int minLength) {
+		int arms = 0;
+		for(int k = 0; k < getDegree(node); k++) {
+			if(!isSpur(getEdge(node, k), minLength)) arms++;
+		}
+		return arms;
+	}
+	
+	/** Returns true if the given node is a junction of at least 3 arms of the given minimum length. */
+	public boolean isBranch(int node, int minLength) {
+		return nodeTypes[node] == JUNCTION && getArmCount(node, minLength) >= 3;
+	}
+	
+	/**
+	 * Returns the number of ridges crossed by the segment between two points,
+	 * not counting the ridges the points are on.
+	 * The segment is followed in direct (4-connected) steps, so it can not slip through a diagonal ridge.
+	 */
+	public int ridgeCount(int x1, int y1, int x2, int y2) {
+		int dx = Math.abs(x2 - x1);
+		int dy = Math.abs(y2 - y1);
+		int sx = Integer.signum(x2 - x1);
+		int sy = Integer.signum(y2 - y1);
+		
+		int x = x1;
+		int y = y1;
+		
+		boolean onRidge = isRidge(x, y);
+		boolean left 	= false;
+		int ridges = 0;
+		
+		for(int ix = 0, iy = 0; ix < dx || iy < dy; ) {
+			// step along the axis whose next pixel boundary is crossed first
+			if((1L + 2L * ix) * dy < (1L + 2L * iy) * dx) {
+				x += sx;
+				ix++;
+			} else {
+				y += sy;
+				iy++;
+			}
+			
+			boolean ridge = isRidge(x, y);
+			if(ridge && !onRidge) ridges++;
+			if(!ridge) left = true;
+			onRidge = ridge;
+		}
+		
+		// the ridge of the end point has been counted when it was reached
+		if(onRidge && left) ridges--;
+		
+		return ridges;
+	}
+	
+	/** Returns the node the given pixel belongs to (or -1 if it is not a node pixel). */
+	public int getNodeAt(int x, int y) {
+		int label = isRidge(x, y) ? labels[index(x, y)] : 0;
+		return label > 0 ? label - 1 : -1;
+	}
+	
+	/** Returns true if the given pixel is on the skeleton. */
+	public boolean isRidge(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < height && labels[index(x, y)] != 0;
+	}
+	
+	/** Returns the index of the given pixel in the labels. */
+	private int index(int x, int y) {
+		return (y + 1) * span + x + 1;
+	}
+	
+	/**
+	 * Marks the dark pixels of the processed range of the image as not labelled yet with their type.
+	 * The pixels outside of the range do not count as neighbours.
+	 * @return The indexes of the dark pixels in row-major order (followed by -1)
+	 */
+	private int[] mark(BinaryImage skeleton) {
+		int stride = skeleton.getStride();
+		long[] words = skeleton.getWords();
+		
+		int[] pixels = new int[256];
+		int count = 0;
+		
+		for(int y = 1; y < height - 2; y++) {
+			for(int index = 0; index < stride; index++) {
+				long dark = words[y * stride + index] & BinaryImage.columnMask(index, 1, width - 3);
+				
+				while(dark != 0L) {
+					int x = (index << 6) + Long.numberOfTrailingZeros(dark);
+					dark &= dark - 1;
+					
+					int code = Neighbourhood.code(skeleton.window(x, y));
+					if(x == 1) code &= ~LEFT;
+					if(x == width - 3) code &= ~RIGHT;
+					if(y == 1) code &= ~TOP;
+					if(y == height - 3) code &= ~BOTTOM;
+					
+					byte type = types[code];
+					
+					if(count + 1 == pixels.length) pixels = Arrays.copyOf(pixels, pixels.length * 2);
+					pixels[count++] = index(x, y);
+					labels[index(x, y)] = type == RIDGE ? UNLABELLED : NODE_PIXEL + type;
+				}
+			}
+		}
+		
+		pixels[count] = -1;
+		return pixels;
+	}
+	
+	/** Creates the nodes in the row-major order of their first pixels. */
+	private void findNodes(int[] pixels) {
+		int[] stack = new int[16];
+		
+		for(int idx = 0; pixels[idx] >= 0; idx++) {
+			int pixel = pixels[idx];
+			if(labels[pixel] == UNLABELLED || labels[pixel] > 0) continue;
+			
+			byte type = (byte) (labels[pixel] - NODE_PIXEL);
+			int node = addNode(pixel, type);
+			labels[pixel] = node + 1;
+			addPixel(pixel);
+			
+			if(type != JUNCTION) continue;
+			
+			// the neighbouring junction pixels belong to the same node
+			int size = 0;
+			stack[size++] = pixel;
+			
+			while(size > 0) {
+				int current = stack[--size];
+				
+				for(int dir = 0; dir < offsets.length; dir++) {
+					int neighbour = current + offsets[dir];
+					if(labels[neighbour] != NODE_PIXEL + JUNCTION) continue;
+					
+					labels[neighbour] = node + 1;
+					addPixel(neighbour);
+					
+					if(size == stack.length) stack = Arrays.copyOf(stack, size * 2);
+					stack[size++] = neighbour;
+				}
+			}
+		}
+	}
+	
+	/** Traces the edges starting at the nodes, then the closed ridges. */
+	private void traceEdges(int[] pixels) {
+		for(int node = 0; node < nodeCount; node++) {
+			int firstEdge = edgeCount;
+			
+			for(int idx = pixelOffsets[node]; idx < pixelOffsets[node + 1]; idx++) {
+				int pixel = nodePixels[idx];
+				
+				for(int dir = 0; dir < offsets.length; dir++) {
+					int neighbour = pixel + offsets[dir];
+					int label = labels[neighbour];
+					
+					if(label == UNLABELLED) {
+						trace(node, pixel, neighbour);
+					} else if(label > node + 1 && !hasEdge(firstEdge, label - 1)) {
+						// adjacent nodes are connected by a single step (found from the first one)
+						int edge = addEdge(node);
+						edgeTo[edge] 	  = label - 1;
+						edgeLengths[edge] = 1;
+					}
+				}
+			}
+		}
+		
+		for(int idx = 0; pixels[idx] >= 0; idx++) {
+			if(labels[pixels[idx]] == UNLABELLED) trace(-1, -1, pixels[idx]);
+		}
+	}
+	
+	/**
+	 * Traces a ridge segment.
+	 * @param start The node the segment starts at (or -1 for a closed ridge)
+	 * @param previous The pixel of the node next to the first pixel (or -1)
+	 * @param first The first pixel of the segment
+	 */
+	private void trace(int start, int previous, int first) {
+		int edge = addEdge(start);
+		int ridge = -(edge + 1);
+		
+		int current = first;
+		int length  = start >= 0 ? 1 : 0;
+		labels[current] = ridge;
+		
+		while(true) {
+			// a neighbouring node ends the segment (the starting one only after moving away from it)
+			int end  = -1;
+			int next = -1;
+			
+			for(int dir = 0; dir < offsets.length; dir++) {
+				int neighbour = current + offsets[dir];
+				int label = labels[neighbour];
+				
+				if(label > 0 && neighbour != previous && (label - 1 != start || length > 2)) {
+					end = label - 1;
+					break;
+				}
+				
+				if(next < 0 && label == UNLABELLED) next = neighbour;
+			}
+			
+			if(end >= 0) {
+				edgeTo[edge] 	  = end;
+				edgeLengths[edge] = length + 1;
+				return;
+			}
+			
+			if(next < 0) {
+				edgeTo[edge] 	  = -1;
+				edgeLengths[edge] = length;
+				return;
+			}
+			
+			labels[next] = ridge;
+			previous = current;
+			current  = next;
+			length++;
+		}
+	}
+	
+	/** Builds the lists of the edges of each node. */
+	private void link() {
+		edgeOffsets = new int[nodeCount + 1];
+		
+		for(int edge = 0; edge < edgeCount; edge++) {
+			if(edgeFrom[edge] >= 0) edgeOffsets[edgeFrom[edge] + 1]++;
+			if(edgeTo[edge] >= 0) edgeOffsets[edgeTo[edge] + 1]++;
+		}
+		
+		for(int node = 0; node < nodeCount; node++) {
+			edgeOffsets[node + 1] += edgeOffsets[node];
+		}
+		
+		nodeEdges = new int[edgeOffsets[nodeCount]];
+		int[] position = Arrays.copyOf(edgeOffsets, nodeCount);
+		
+		for(int edge = 0; edge < edgeCount; edge++) {
+			if(edgeFrom[edge] >= 0) nodeEdges[position[edgeFrom[edge]]++] = edge;
+			if(edgeTo[edge] >= 0) nodeEdges[position[edgeTo[edge]]++] = edge;
+		}
+	}
+	
+	/** Returns true if an edge created since the given one already connects to the given node. */
+	private boolean hasEdge(int firstEdge, int node) {
+		for(int edge = firstEdge; edge < edgeCount; edge++) {
+			if(edgeTo[edge] == node) return true;
+		}
+		return false;
+	}
+	
+	/** Adds a node, returns its index. */
+	private int addNode(int pixel, byte type) {
+		if(nodeCount == nodeX.length) {
+			int capacity = nodeCount * 2;
+			
+			nodeX 		 = Arrays.copyOf(nodeX, capacity);
+			nodeY 		 = Arrays.copyOf(nodeY, capacity);
+			nodeTypes 	 = Arrays.copyOf(nodeTypes, capacity);
+			pixelOffsets = Arrays.copyOf(pixelOffsets, capacity + 1);
+		}
+		
+		nodeX[nodeCount] 	 = pixel % span - 1;
+		nodeY[nodeCount] 	 = pixel / span - 1;
+		nodeTypes[nodeCount] = type;
+		
+		// the pixels of the new node follow the ones added so far
+		pixelOffsets[nodeCount + 1] = pixelOffsets[nodeCount];
+		
+		return nodeCount++;
+	}
+	
+	/** Adds a pixel to the last node. */
+	private void addPixel(int pixel) {
+		int count = pixelCount();
+		if(count == nodePixels.length) {
+			nodePixels = Arrays.copyOf(nodePixels, count * 2);
+		}
+		
+		nodePixels[count] = pixel;
+		pixelOffsets[nodeCount] = count + 1;
+	}
+	
+	/** Returns the number of pixels of all nodes. */
+	private int pixelCount() {
+		return pixelOffsets[nodeCount];
+	}
+	
+	/** Adds an edge starting at the given node, returns its index. */
+	private int addEdge(int from) {
+		if(edgeCount == edgeFrom.length) {
+			int capacity = edgeCount * 2;
+			
+			edgeFrom 	= Arrays.copyOf(edgeFrom, capacity);
+			edgeTo 		= Arrays.copyOf(edgeTo, capacity);
+			edgeLengths = Arrays.copyOf(edgeLengths, capacity);
+		}
+		
+		edgeFrom[edgeCount] = from;
+		return edgeCount++;
+	}
+	
+}
@@ -0,0 +1,205 @@
+package hu.rycus86.bioid.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Binary minutiae template of an analyzed image.
+ * 
+ * Each template is stored as a self-contained record, so files holding single templates
+ * can simply be concatenated into a file holding many of them:
+ * <pre>
+ *   magic (4 bytes, "FPMT") | version (1 byte) | body length (varint) | body
+ *   body: source path length (varint) | source path (UTF-8)
+ *         | ending count (varint) | endings | branch count (varint) | branches
+ * </pre>
+ * The coordinates of each list are delta-encoded against the previous point of the list
+ * as zig-zag varints (x first), so the row-major lists of the extractors take one or two bytes per coordinate.
+ * 
+ * @author viktor.adam
+ */
+public class Template {
+	
+	/** The magic number starting each record. */
+	public static final int MAGIC = 0x46504D54;
+	/** The current version of the format. */
+	public static final int VERSION = 1;
+	
+	/** The path of the source image. */
+	private final String source;
+	/** The endings and branches. */
+	private final Minutiae minutiae;
+	
+	/** Constructor. */
+	public Template(String source, Minutiae minutiae) {
+		this.source   = source;
+		this.minutiae = minutiae;
+	}
+	
+	/** Constructor. */
+	public Template(String source, List<Point> endings, List<Point> branches) {
+		this(source, new Minutiae(endings, branches));
+	}
+	
+	/** Returns the path of the source image. */
+	public String getSource() { return source; }
+	/** Returns the endings and branches. */
+	public Minutiae getMinutiae() { return minutiae; }
+	/** Returns the list of coordinates for endings. */
+	public List<Point> getEndings() { return minutiae.getEndings(); }
+	/** Returns the list of coordinates for branches. */
+	public List<Point> getBranches() { return minutiae.getBranches(); }
+	
+	/** Writes the template as a single record to the given stream. */
+	public void write(OutputStream stream) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(16 + 4 * minutiae.size());
+		
+		byte[] path = source.getBytes(StandardCharsets.UTF_8);
+		writeVarint(body, path.length);
+		body.write(path);
+		
+		writePoints(body, Minutiae.ENDING, minutiae.getEndingCount());
+		writePoints(body, Minutiae.BRANCH, minutiae.getBranchCount());
+		
+		ByteArrayOutputStream header = new ByteArrayOutputStream(10);
+		header.write(MAGIC >>> 24);
+		header.write(MAGIC >>> 16);
+		header.write(MAGIC >>> 8);
+		header.write(MAGIC);
+		header.write(VERSION);
+		writeVarint(header, body.size());
+		
+		header.writeTo(stream);
+		body.writeTo(stream);
+	}
+	
+	/**
+	 * Reads the template record at the current position of the buffer
+	 * and moves the position after it.
+	 * @throws IllegalArgumentException if the record is malformed or has an unsupported version
+	 */
+	public static Template read(ByteBuffer buffer) {
+		int end = start(buffer);
+		
+		byte[] path = new byte[readLength(buffer, end, 1, "source path length")];
+		buffer.get(path);
+		
+		Minutiae minutiae = new Minutiae();
+		readPoints(buffer, end, minutiae, Minutiae.ENDING);
+		readPoints(buffer, end, minutiae, Minutiae.BRANCH);
+		
+		if(buffer.position() != end) {
+			throw new IllegalArgumentException("Template record length mismatch at " + buffer.position());
+		}
+		
+		return new Template(new String(path, StandardCharsets.UTF_8), minutiae);
+	}
+	
+	/** Moves the position of the buffer after the template record at the current position. */
+	public static void skip(ByteBuffer buffer) {
+		buffer.position(start(buffer));
+	}
+	
+	/** Reads the header of a record and returns the position of the end of its body. */
+	private static int start(ByteBuffer buffer) {
+		if(buffer.remaining() < 5) {
+			throw new IllegalArgumentException("Truncated template header at " + buffer.position());
+		}
+		
+		int magic = buffer.getInt();
+		if(magic != MAGIC) {
+			throw new IllegalArgumentException("Invalid template magic at " + (buffer.position() - 4));
+		}
+		
+		int version = buffer.get() & 0xFF;
+		if(version != VERSION) {
+			throw new IllegalArgumentException("Unsupported template version: " + version);
+		}
+		
+		int length = readLength(buffer, buffer.limit(), 1, "body length");
+		return buffer.position() + length;
+	}
+	
+	/**
+	 * Reads the length of a part of a record holding items of the given minimum size
+	 * and checks that they fit before the given end.
+	 */
+	private static int readLength(ByteBuffer buffer, int end, int itemSize, String part) {
+		int length = readVarint(buffer, end);
+		if(length < 0 || length > (end - buffer.position()) / itemSize) {
+			throw new IllegalArgumentException("Invalid template " + part + " " + (length & 0xFFFFFFFFL) + " at " + buffer.position());
+		}
+		return length;
+	}
+	
+	/** Writes the count and the delta-encoded coordinates of the minutiae of the given type. */
+	private void writePoints(OutputStream stream, byte type, int count) throws IOException {
+		writeVarint(stream, count);
+		
+		int px = 0;
+		int py = 0;
+		for(int index = 0; index < minutiae.size(); index++) {
+			if(minutiae.getType(index) != type) continue;
+			
+			int x = minutiae.getX(index);
+			int y = minutiae.getY(index);
+			writeVarint(stream, zigzag(x - px));
+			writeVarint(stream, zigzag(y - py));
+			px = x;
+			py = y;
+		}
+	}
+	
+	/** Reads the count and the delta-encoded coordinates of minutiae of the given type (in the record ending at the given position). */
+	private static void readPoints(ByteBuffer buffer, int end, Minutiae minutiae, byte type) {
+		// each point takes at least two bytes
+		int count = readLength(buffer, end, 2, "point count");
+		
+		int px = 0;
+		int py = 0;
+		for(int idx = 0; idx < count; idx++) {
+			px += unzigzag(readVarint(buffer, end));
+			py += unzigzag(readVarint(buffer, end));
+			minutiae.add(type, px, py);
+		}
+	}
+	
+	/** Writes an unsigned value in 7-bit groups, least significant first. */
+	private static void writeVarint(OutputStream stream, int value) throws IOException {
+		while((value & ~0x7F) != 0) {
+			stream.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		stream.write(value);
+	}
+	
+	/** Reads an unsigned value written by {@link #writeVarint(OutputStream, int)} before the given position. */
+	private static int readVarint(ByteBuffer buffer, int end) {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			if(buffer.position() >= end) {
+				throw new IllegalArgumentException("Truncated template record at " + buffer.position());
+			}
+			
+			int b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) return value;
+		}
+		throw new IllegalArgumentException("Malformed varint at " + buffer.position());
+	}
+	
+	/** Maps signed values to unsigned ones so small magnitudes stay small. */
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+	
+	/** Reverses {@link #zigzag(int)}. */
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+}
@@ -0,0 +1,72 @@
+package hu.rycus86.bioid.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Helper class for reading the binary templates (see {@link Template}) of a file holding many of them.
+ * 
+ * The file is memory-mapped, so only the pages of the templates actually read are loaded
+ * and records can be skipped without decoding them.
+ * 
+ * @author viktor.adam
+ */
+public class TemplateReader implements Iterator<Template> {
+	
+	/** The mapped contents of the file. */
+	private final MappedByteBuffer buffer;
+	
+	/** Maps the given template file (the file can be closed right after this). */
+	public TemplateReader(File file) throws IOException {
+		try ( RandomAccessFile input = new RandomAccessFile(file, "r") ) {
+			FileChannel channel = input.getChannel();
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Template file is too large to map: " + file);
+			}
+			
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+	
+	/** Returns the number of templates in the file without decoding them (the position is not changed). */
+	public int count() {
+		int position = buffer.position();
+		
+		int count = 0;
+		while(buffer.hasRemaining()) {
+			Template.skip(buffer);
+			count++;
+		}
+		
+		buffer.position(position);
+		return count;
+	}
+	
+	/** Skips the next template without decoding it. */
+	public void skip() {
+		if(!hasNext()) throw new NoSuchElementException();
+		Template.skip(buffer);
+	}
+	
+	/* @see java.util.Iterator#hasNext() */
+	@Override public boolean hasNext() {
+		return buffer.hasRemaining();
+	}
+	
+	/* @see java.util.Iterator#next() */
+	@Override public Template next() {
+		if(!hasNext()) throw new NoSuchElementException();
+		return Template.read(buffer);
+	}
+	
+	/* @see java.util.Iterator#remove() */
+	@Override public void remove() {
+		throw new UnsupportedOperationException();
+	}
+	
+}